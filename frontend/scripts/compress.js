@@ -0,0 +1,60 @@
+// Writes .br and .gz copies of the text assets in build/, next to the
+// originals. Spring serves them to clients that accept those encodings
+// (spring.web.resources.chain.compressed), so nothing is compressed per request.
+
+const fs = require("fs");
+const path = require("path");
+const zlib = require("zlib");
+
+const buildDir = path.join(__dirname, "..", "build");
+const compressible = /\.(html|js|css|json|svg|txt)$/;
+// same threshold as server.compression.min-response-size
+const minSize = 1024;
+
+const encodings = [
+  {
+    extension: ".br",
+    compress: (data) =>
+      zlib.brotliCompressSync(data, {
+        params: {
+          [zlib.constants.BROTLI_PARAM_QUALITY]: zlib.constants.BROTLI_MAX_QUALITY,
+          [zlib.constants.BROTLI_PARAM_SIZE_HINT]: data.length,
+        },
+      }),
+  },
+  {
+    extension: ".gz",
+    compress: (data) => zlib.gzipSync(data, { level: zlib.constants.Z_BEST_COMPRESSION }),
+  },
+];
+
+function* files(dir) {
+  for (const entry of fs.readdirSync(dir, { withFileTypes: true })) {
+    const file = path.join(dir, entry.name);
+    if (entry.isDirectory()) {
+      yield* files(file);
+    } else {
+      yield file;
+    }
+  }
+}
+
+let written = 0;
+for (const file of files(buildDir)) {
+  if (!compressible.test(file)) {
+    continue;
+  }
+  const data = fs.readFileSync(file);
+  if (data.length < minSize) {
+    continue;
+  }
+  for (const { extension, compress } of encodings) {
+    const compressed = compress(data);
+    // a copy that is not smaller would only cost a lookup
+    if (compressed.length < data.length) {
+      fs.writeFileSync(file + extension, compressed);
+      written++;
+    }
+  }
+}
+console.log(`Precompressed ${written} files in ${path.relative(process.cwd(), buildDir)}`);
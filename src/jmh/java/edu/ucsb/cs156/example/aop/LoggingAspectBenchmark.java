@@ -0,0 +1,85 @@
+package edu.ucsb.cs156.example.aop;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import edu.ucsb.cs156.example.controllers.DogController;
+import edu.ucsb.cs156.example.entities.Dog;
+import edu.ucsb.cs156.example.repositories.DogRepository;
+import edu.ucsb.cs156.example.services.TableChangeTracker;
+
+/**
+ * What LoggingAspect adds to a handler call: DogController.allDogs called
+ * directly, and through a Spring AOP proxy carrying the aspect. Log events
+ * go to a NOPAppender (src/jmh/resources/logback-test.xml), so the cost of
+ * writing them out is not included.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoggingAspectBenchmark {
+  DogController direct;
+  DogController withLoggingAspect;
+  ServletWebRequest request;
+
+  @Setup
+  public void setup() {
+    DogRepository dogRepository = mock(DogRepository.class);
+    when(dogRepository.findAll()).thenReturn(List.of(Dog.builder().id(1).version(0L).name("Max").breed("Poodle").build()));
+
+    direct = new DogController();
+    ReflectionTestUtils.setField(direct, "dogRepository", dogRepository);
+    ReflectionTestUtils.setField(direct, "tableChangeTracker", new TableChangeTracker());
+
+    AspectJProxyFactory factory = new AspectJProxyFactory(direct);
+    factory.setProxyTargetClass(true);
+    factory.addAspect(new LoggingAspect());
+    withLoggingAspect = factory.getProxy();
+
+    MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/api/dogs/all");
+    request = new ServletWebRequest(servletRequest, new MockHttpServletResponse());
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(servletRequest));
+  }
+
+  @TearDown
+  public void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Benchmark
+  public ResponseEntity<Iterable<Dog>> direct() {
+    return direct.allDogs(request);
+  }
+
+  @Benchmark
+  public ResponseEntity<Iterable<Dog>> withLoggingAspect() {
+    return withLoggingAspect.allDogs(request);
+  }
+}
@@ -0,0 +1,171 @@
+package edu.ucsb.cs156.example.config;
+
+import static org.mockito.Mockito.mock;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.oauth2.client.CommonOAuth2Provider;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.web.authentication.Http403ForbiddenEntryPoint;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import edu.ucsb.cs156.example.repositories.UserRepository;
+
+/**
+ * GET /api/dogs/all by a logged-in user, through MockMvc with the whole
+ * security filter chain, authorized two ways:
+ *
+ * <ul>
+ * <li><code>urlRules</code>: the rules in SecurityConfig, built from the
+ * real class in a minimal web context</li>
+ * <li><code>preAuthorize</code>: a chain that lets every request through,
+ * with the handler carrying <code>@PreAuthorize("hasRole('ROLE_USER')")</code>
+ * under <code>@EnableGlobalMethodSecurity(prePostEnabled = true)</code>, as
+ * the controllers used to</li>
+ * </ul>
+ *
+ * The handler returns a constant, so the difference between the two is the
+ * cost of the authorization itself.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoleAuthorizationBenchmark {
+  AnnotationConfigWebApplicationContext urlRulesContext;
+  AnnotationConfigWebApplicationContext preAuthorizeContext;
+
+  MockMvc urlRules;
+  MockMvc preAuthorize;
+
+  RequestBuilder allDogs;
+
+  @RestController
+  public static class DogsHandler {
+    @GetMapping("/api/dogs/all")
+    public String allDogs() {
+      return "[]";
+    }
+  }
+
+  @RestController
+  public static class PreAuthorizedDogsHandler {
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/api/dogs/all")
+    public String allDogs() {
+      return "[]";
+    }
+  }
+
+  @Configuration
+  @EnableWebMvc
+  public static class Beans {
+    @Bean
+    public UserRepository userRepository() {
+      return mock(UserRepository.class);
+    }
+
+    @Bean
+    public ClientRegistrationRepository clientRegistrationRepository() {
+      return new InMemoryClientRegistrationRepository(CommonOAuth2Provider.GOOGLE.getBuilder("google")
+          .clientId("benchmark")
+          .clientSecret("benchmark")
+          .build());
+    }
+  }
+
+  @Configuration
+  @EnableWebSecurity
+  @EnableGlobalMethodSecurity(prePostEnabled = true)
+  public static class PreAuthorizeSecurityConfig extends WebSecurityConfigurerAdapter {
+    @Override
+    protected void configure(HttpSecurity http) throws Exception {
+      http.authorizeHttpRequests(authorize -> authorize.anyRequest().permitAll())
+          .exceptionHandling(handlingConfigurer -> handlingConfigurer
+              .authenticationEntryPoint(new Http403ForbiddenEntryPoint()));
+    }
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    urlRulesContext = context(Beans.class, SecurityConfig.class, DogsHandler.class);
+    preAuthorizeContext = context(Beans.class, PreAuthorizeSecurityConfig.class, PreAuthorizedDogsHandler.class);
+    urlRules = MockMvcBuilders.webAppContextSetup(urlRulesContext).apply(springSecurity()).build();
+    preAuthorize = MockMvcBuilders.webAppContextSetup(preAuthorizeContext).apply(springSecurity()).build();
+    allDogs = get("/api/dogs/all").with(user("user@ucsb.edu").roles("USER"));
+
+    // both must let the user in and keep everyone else out, or the numbers mean nothing
+    for (MockMvc mockMvc : new MockMvc[] { urlRules, preAuthorize }) {
+      expectStatus(mockMvc, allDogs, 200);
+      expectStatus(mockMvc, get("/api/dogs/all"), 403);
+    }
+  }
+
+  private static void expectStatus(MockMvc mockMvc, RequestBuilder request, int status) throws Exception {
+    int actual = mockMvc.perform(request).andReturn().getResponse().getStatus();
+    if (actual != status) {
+      throw new IllegalStateException("expected %d, got %d".formatted(status, actual));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    urlRulesContext.close();
+    preAuthorizeContext.close();
+  }
+
+  private static AnnotationConfigWebApplicationContext context(Class<?>... classes) {
+    AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
+    context.setServletContext(new MockServletContext());
+    context.getEnvironment().getPropertySources()
+        .addFirst(new MapPropertySource("benchmark", Map.of("app.admin.emails", "admin@ucsb.edu")));
+    context.register(classes);
+    context.refresh();
+    return context;
+  }
+
+  @Benchmark
+  public MvcResult urlRules() throws Exception {
+    return urlRules.perform(allDogs).andReturn();
+  }
+
+  @Benchmark
+  public MvcResult preAuthorize() throws Exception {
+    return preAuthorize.perform(allDogs).andReturn();
+  }
+}
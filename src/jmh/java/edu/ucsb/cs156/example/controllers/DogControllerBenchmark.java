@@ -0,0 +1,65 @@
+package edu.ucsb.cs156.example.controllers;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import edu.ucsb.cs156.example.entities.Dog;
+import edu.ucsb.cs156.example.repositories.DogRepository;
+import edu.ucsb.cs156.example.services.TableChangeTracker;
+
+/**
+ * GET /api/dogs/all through MockMvc: dispatch, argument resolution, the
+ * ETag check and Jackson, with the repository mocked out. The controller is
+ * set up standalone, so the security filter chain and aspects are not
+ * included (see RoleAuthorizationBenchmark and LoggingAspectBenchmark).
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DogControllerBenchmark {
+  @Param({ "10", "1000" })
+  int rows;
+
+  MockMvc mockMvc;
+
+  @Setup
+  public void setup() {
+    DogRepository dogRepository = mock(DogRepository.class);
+    when(dogRepository.findAll()).thenReturn(IntStream.range(0, rows)
+        .mapToObj(i -> Dog.builder().id(i).version(0L).name("Dog " + i).breed("Golden Retriever").build())
+        .toList());
+
+    DogController dogController = new DogController();
+    dogController.dogRepository = dogRepository;
+    dogController.tableChangeTracker = new TableChangeTracker();
+    mockMvc = MockMvcBuilders.standaloneSetup(dogController).build();
+  }
+
+  @Benchmark
+  public MvcResult allDogs() throws Exception {
+    return mockMvc.perform(get("/api/dogs/all")).andReturn();
+  }
+}
@@ -0,0 +1,97 @@
+package edu.ucsb.cs156.example.entities;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import edu.ucsb.cs156.example.models.CurrentUser;
+
+/**
+ * Jackson serialization of the lists the API returns, with the ObjectMapper
+ * set up as JacksonAutoConfiguration does (java.time as ISO strings).
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+  @Param({ "10", "1000" })
+  int rows;
+
+  ObjectMapper mapper;
+
+  List<Dog> dogs;
+  List<Book> books;
+  List<UCSBDate> dates;
+  List<CurrentUser> currentUsers;
+
+  @Setup
+  public void setup() {
+    mapper = Jackson2ObjectMapperBuilder.json()
+        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .build();
+
+    LocalDateTime start = LocalDateTime.parse("2023-01-09T08:00:00");
+    dogs = IntStream.range(0, rows)
+        .mapToObj(i -> Dog.builder().id(i).version(0L).name("Dog " + i).breed("Golden Retriever").build())
+        .toList();
+    books = IntStream.range(0, rows)
+        .mapToObj(i -> Book.builder().id(i).version(0L).title("Book " + i).author("Author " + i).year("2023").build())
+        .toList();
+    dates = IntStream.range(0, rows)
+        .mapToObj(i -> UCSBDate.builder().id(i).version(0L).quarterYYYYQ("20231").name("Day " + i)
+            .localDateTime(start.plusDays(i)).build())
+        .toList();
+    currentUsers = IntStream.range(0, rows)
+        .mapToObj(i -> CurrentUser.builder()
+            .user(User.builder().id(i).version(0L).email("user" + i + "@ucsb.edu").googleSub("sub" + i)
+                .pictureUrl("https://lh3.googleusercontent.com/a/user" + i).fullName("User " + i)
+                .givenName("User").familyName(String.valueOf(i)).emailVerified(true).locale("en")
+                .hostedDomain("ucsb.edu").admin(false).build())
+            .roles(AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_MEMBER", "SCOPE_openid"))
+            .build())
+        .toList();
+  }
+
+  @Benchmark
+  public byte[] dogs() throws JsonProcessingException {
+    return mapper.writeValueAsBytes(dogs);
+  }
+
+  @Benchmark
+  public byte[] books() throws JsonProcessingException {
+    return mapper.writeValueAsBytes(books);
+  }
+
+  @Benchmark
+  public byte[] ucsbDates() throws JsonProcessingException {
+    return mapper.writeValueAsBytes(dates);
+  }
+
+  @Benchmark
+  public byte[] currentUsers() throws JsonProcessingException {
+    return mapper.writeValueAsBytes(currentUsers);
+  }
+}
@@ -0,0 +1,98 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+
+/**
+ * The k-d tree behind /api/ucsbdiningcommons/near against a full scan that
+ * computes the haversine distance to every commons and sorts. The commons
+ * are scattered within about 2 km of campus. The real table has a handful
+ * of rows; the larger sizes show how the two grow.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiningCommonsLocatorBenchmark {
+  static final double EARTH_RADIUS_METERS = 6_371_000;
+
+  @Param({ "5", "1000", "100000" })
+  int commons;
+
+  @Param({ "3" })
+  int k;
+
+  List<UCSBDiningCommons> all;
+
+  KdTree<UCSBDiningCommons> tree;
+
+  double[][] targets;
+
+  int next;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    all = IntStream.range(0, commons)
+        .mapToObj(i -> UCSBDiningCommons.builder()
+            .code("commons-" + i)
+            .latitude(34.41 + (random.nextDouble() - 0.5) * 0.04)
+            .longitude(-119.85 + (random.nextDouble() - 0.5) * 0.04)
+            .build())
+        .toList();
+    tree = KdTree.build(all, c -> DiningCommonsLocator.toPoint(c.getLatitude(), c.getLongitude()));
+    targets = IntStream.range(0, 1024)
+        .mapToObj(i -> new double[] { 34.41 + (random.nextDouble() - 0.5) * 0.04,
+            -119.85 + (random.nextDouble() - 0.5) * 0.04 })
+        .toArray(double[][]::new);
+  }
+
+  @Benchmark
+  public List<UCSBDiningCommons> kdTree() {
+    double[] target = nextTarget();
+    return tree.nearest(DiningCommonsLocator.toPoint(target[0], target[1]), k);
+  }
+
+  @Benchmark
+  public List<UCSBDiningCommons> fullScan() {
+    double[] target = nextTarget();
+    return all.stream()
+        .sorted(Comparator.comparingDouble(c -> haversine(target[0], target[1], c.getLatitude(), c.getLongitude())))
+        .limit(k)
+        .toList();
+  }
+
+  private double[] nextTarget() {
+    double[] target = targets[next];
+    next = (next + 1) & (targets.length - 1);
+    return target;
+  }
+
+  static double haversine(double lat1, double lon1, double lat2, double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+    return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(a));
+  }
+}
@@ -0,0 +1,53 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * GrantedAuthoritiesService.getGrantedAuthorities for a logged-in admin,
+ * including its INFO log line (sent to a NOPAppender).
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GrantedAuthoritiesServiceBenchmark {
+  GrantedAuthoritiesService grantedAuthoritiesService;
+
+  @Setup
+  public void setup() {
+    grantedAuthoritiesService = new GrantedAuthoritiesService();
+    // the security context is per thread, like @State(Scope.Thread)
+    SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("admin@ucsb.edu", null,
+        AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN", "ROLE_MEMBER", "SCOPE_openid", "SCOPE_email", "SCOPE_profile")));
+  }
+
+  @TearDown
+  public void tearDown() {
+    SecurityContextHolder.clearContext();
+  }
+
+  @Benchmark
+  public Collection<? extends GrantedAuthority> getGrantedAuthorities() {
+    return grantedAuthoritiesService.getGrantedAuthorities();
+  }
+}
@@ -3,17 +3,22 @@ package edu.ucsb.cs156.example.aop;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
 
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.lang.reflect.Method;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Aspect
@@ -29,19 +34,42 @@ public class LoggingAspect {
       @annotation(org.springframework.web.bind.annotation.PatchMapping)
       """;
 
-  private ArrayList<String> stoplist = new ArrayList<String>(Arrays.asList(
-      "edu.ucsb.cs156.example.controllers.FrontendProxyController"));
+  private static final Set<String> stoplist = Set.of(
+      "edu.ucsb.cs156.example.controllers.FrontendProxyController");
 
-  @Before(pointcut)
+  // marks handlers on the stoplist in the cache below
+  private static final String NOT_LOGGED = "";
+
+  // "<method> in <controller>" for each handler method, computed on its first call.
+  // Keyed by Method rather than Signature: Spring AOP creates a new Signature per call.
+  private final Map<Method, String> handlerDescriptions = new ConcurrentHashMap<>();
+
+  // also used by MetricsAspect
+  @Pointcut(pointcut)
+  public void requestHandlers() {
+  }
+
+  @Before("requestHandlers()")
   public void logControllers(JoinPoint joinPoint) {
+    if (!log.isInfoEnabled()) {
+      return;
+    }
+    Signature signature = joinPoint.getSignature();
+    String handler = handlerDescriptions.computeIfAbsent(((MethodSignature) signature).getMethod(),
+        method -> describe(signature));
+    if (handler.isEmpty()) {
+      return;
+    }
     getCurrentHttpRequest().ifPresent(
-        request -> {
-          String declaringTypeName = joinPoint.getSignature().getDeclaringTypeName();
-          if (!stoplist.contains(declaringTypeName)) {
-            log.info("===== %s %s handled by %s in %s".formatted(request.getMethod(), request.getRequestURI(),
-                joinPoint.getSignature().getName(), declaringTypeName));
-          }
-        });
+        request -> log.info("===== {} {} handled by {}", request.getMethod(), request.getRequestURI(), handler));
+  }
+
+  private static String describe(Signature signature) {
+    String declaringTypeName = signature.getDeclaringTypeName();
+    if (stoplist.contains(declaringTypeName)) {
+      return NOT_LOGGED;
+    }
+    return "%s in %s".formatted(signature.getName(), declaringTypeName);
   }
 
   private static Optional<HttpServletRequest> getCurrentHttpRequest() {
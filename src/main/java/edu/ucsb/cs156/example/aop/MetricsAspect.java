@@ -0,0 +1,50 @@
+package edu.ucsb.cs156.example.aop;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times every request handler in our controllers, tagged by controller and
+ * method, with a percentile histogram so that latency percentiles can be
+ * computed from the Prometheus scrape (see docs/metrics.md).
+ */
+
+@Aspect
+@Component
+public class MetricsAspect {
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+  @Around("edu.ucsb.cs156.example.aop.LoggingAspect.requestHandlers() && within(edu.ucsb.cs156.example.controllers..*)")
+  public Object timeControllers(ProceedingJoinPoint joinPoint) throws Throwable {
+    Timer timer = timers.computeIfAbsent(((MethodSignature) joinPoint.getSignature()).getMethod(), this::timerFor);
+    Timer.Sample sample = Timer.start(meterRegistry);
+    try {
+      return joinPoint.proceed();
+    } finally {
+      sample.stop(timer);
+    }
+  }
+
+  private Timer timerFor(Method method) {
+    return Timer.builder("app.controller.invocations")
+        .description("Time spent in controller request handler methods")
+        .tag("controller", method.getDeclaringClass().getSimpleName())
+        .tag("method", method.getName())
+        .publishPercentiles(0.5, 0.95, 0.99)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+  }
+}
@@ -0,0 +1,33 @@
+package edu.ucsb.cs156.example.config;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+/**
+ * Runs the Flyway migrations in db/migration and db/vendor/{vendor}.
+ *
+ * Tables and columns are still created by <code>ddl-auto</code>, so the
+ * migrations only hold what Hibernate cannot do (unique indexes over
+ * duplicate rows, seeded sequences, vendor-specific indexes). They therefore
+ * run right after the EntityManagerFactory is built, instead of before it
+ * as Spring Boot would otherwise do, but still before the application
+ * serves any request.
+ */
+
+@Configuration
+public class FlywayConfig {
+  @Bean
+  public FlywayMigrationStrategy deferredFlywayMigration() {
+    return flyway -> { };
+  }
+
+  @Bean
+  @DependsOn("entityManagerFactory")
+  public InitializingBean flywayMigration(Flyway flyway) {
+    return flyway::migrate;
+  }
+}
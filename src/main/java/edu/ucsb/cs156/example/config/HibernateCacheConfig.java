@@ -0,0 +1,95 @@
+package edu.ucsb.cs156.example.config;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.cache.CacheManager;
+import javax.cache.spi.CachingProvider;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import lombok.Data;
+
+/**
+ * Hibernate second-level and query cache, kept in Caffeine through JCache.
+ *
+ * Every region listed under <code>app.hibernate.cache.regions</code> in
+ * application.properties gets its own maximum size and time-to-live.
+ * Hibernate's update-timestamps region is always created without either,
+ * since evicting from it could let the query cache return stale results.
+ *
+ * Each region's JCache statistics are published as
+ * <code>cache.gets{cache=&lt;region&gt;}</code> and friends, like the other
+ * Caffeine caches of the app, so hit ratios are available without turning on
+ * <code>hibernate.generate_statistics</code>.
+ */
+
+@Configuration
+public class HibernateCacheConfig {
+  static final String UPDATE_TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+  private static final AtomicInteger cacheManagers = new AtomicInteger();
+
+  @Data
+  public static class Region {
+    private long maximumSize = 1000;
+    private Duration timeToLive = Duration.ofHours(1);
+  }
+
+  @Data
+  public static class Regions {
+    private Map<String, Region> regions = new LinkedHashMap<>();
+  }
+
+  @Bean
+  @ConfigurationProperties("app.hibernate.cache")
+  public Regions hibernateCacheRegions() {
+    return new Regions();
+  }
+
+  @Bean(destroyMethod = "close")
+  public CacheManager hibernateCacheManager(Regions hibernateCacheRegions) {
+    // not the JVM-wide default manager from Caching.getCachingProvider(): in a
+    // test run several application contexts are alive at once, and each needs
+    // its own caches (and its own names for their statistics MBeans)
+    CachingProvider provider = new CaffeineCachingProvider();
+    URI uri = URI.create("hibernate-" + cacheManagers.incrementAndGet());
+    CacheManager cacheManager = provider.getCacheManager(uri, getClass().getClassLoader());
+
+    hibernateCacheRegions.getRegions().forEach((name, region) -> {
+      CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+      configuration.setMaximumSize(OptionalLong.of(region.getMaximumSize()));
+      configuration.setExpireAfterWrite(OptionalLong.of(region.getTimeToLive().toNanos()));
+      configuration.setStatisticsEnabled(true);
+      cacheManager.createCache(name, configuration);
+    });
+    if (cacheManager.getCache(UPDATE_TIMESTAMPS_REGION) == null) {
+      cacheManager.createCache(UPDATE_TIMESTAMPS_REGION, new CaffeineConfiguration<>());
+    }
+    return cacheManager;
+  }
+
+  @Bean
+  public MeterBinder hibernateCacheMetrics(CacheManager hibernateCacheManager) {
+    return registry -> hibernateCacheManager.getCacheNames()
+        .forEach(name -> JCacheMetrics.monitor(registry, hibernateCacheManager.getCache(name)));
+  }
+
+  @Bean
+  public HibernatePropertiesCustomizer hibernateSecondLevelCache(CacheManager hibernateCacheManager) {
+    return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+  }
+}
@@ -0,0 +1,53 @@
+package edu.ucsb.cs156.example.config;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+
+/**
+ * Cache headers for the React build, which is copied to
+ * <code>classpath:/public/</code> in production (see the pom).
+ *
+ * Everything under <code>/static/</code> has a content hash in its file name,
+ * so browsers and proxies may keep it for a year without revalidating.
+ * <code>index.html</code>, which names the current hashes (and is what
+ * FrontendController forwards to), must be revalidated on every load.
+ * The handlers resolve through a cached resource chain and serve the
+ * .br/.gz copies written by frontend/scripts/compress.js.
+ */
+
+@Configuration
+@Profile("!development")
+public class WebConfig implements WebMvcConfigurer {
+  static final String BUILD_LOCATION = "classpath:/public/";
+
+  /** public, max-age=31536000, immutable; CacheControl has no immutable() before Spring 6 */
+  static final CacheControl IMMUTABLE = new CacheControl() {
+    private final String headerValue = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().getHeaderValue() + ", immutable";
+
+    @Override
+    public String getHeaderValue() {
+      return headerValue;
+    }
+  };
+
+  @Override
+  public void addResourceHandlers(ResourceHandlerRegistry registry) {
+    registry.addResourceHandler("/static/**")
+        .addResourceLocations(BUILD_LOCATION + "static/")
+        .setCacheControl(IMMUTABLE)
+        .resourceChain(true)
+        .addResolver(new EncodedResourceResolver());
+
+    registry.addResourceHandler("/index.html")
+        .addResourceLocations(BUILD_LOCATION)
+        .setCacheControl(CacheControl.noCache())
+        .resourceChain(true)
+        .addResolver(new EncodedResourceResolver());
+  }
+}
@@ -1,31 +1,152 @@
 package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.PreconditionFailedException;
 import net.bytebuddy.implementation.bytecode.Throw;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import edu.ucsb.cs156.example.models.CurrentUser;
+import edu.ucsb.cs156.example.models.KeysetPage;
 import edu.ucsb.cs156.example.services.CurrentUserService;
+import edu.ucsb.cs156.example.services.TableWrite;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import javax.persistence.OptimisticLockException;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.LongToIntFunction;
+import java.util.function.Supplier;
 
 @Slf4j
 public abstract class ApiController {
+  protected static final int MAX_PAGE_SIZE = 1000;
+
+  // lets browsers keep responses that carry an ETag, but always revalidate them
+  protected static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
   @Autowired
   private CurrentUserService currentUserService;
 
+  @Autowired
+  private ApplicationEventPublisher eventPublisher;
+
   protected CurrentUser getCurrentUser() {
     return currentUserService.getCurrentUser();
   }
 
+  /** Call after every write, so that indexes, caches and list tags of the table follow it. */
+  protected void tableWritten(TableWrite write) {
+    eventPublisher.publishEvent(write);
+  }
+
   protected Object genericMessage(String message) {
     return Map.of("message", message);
   }
 
+  /**
+   * Builds the request for one keyset page; one extra row is fetched so that
+   * we can tell whether another page follows without a count query.
+   */
+  protected Pageable keysetRequest(int limit) {
+    return PageRequest.of(0, pageSize(limit) + 1);
+  }
+
+  /** An offset page, with the page size clamped to 1..MAX_PAGE_SIZE. */
+  protected Pageable pageRequest(int page, int size) {
+    return PageRequest.of(Math.max(page, 0), pageSize(size));
+  }
+
+  /** The number of rows a client asked for, clamped to 1..MAX_PAGE_SIZE. */
+  protected int pageSize(int limit) {
+    return Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+  }
+
+  protected <T, K> KeysetPage<T, K> keysetPage(List<T> rows, Pageable request, Function<T, K> cursor) {
+    int pageSize = request.getPageSize() - 1;
+    if (rows.size() <= pageSize) {
+      return new KeysetPage<>(rows, null);
+    }
+    List<T> content = new ArrayList<>(rows.subList(0, pageSize));
+    return new KeysetPage<>(content, cursor.apply(content.get(pageSize - 1)));
+  }
+
+  /** Strong ETag for a single row; it changes whenever the row's @Version does. */
+  protected String entityTag(Object id, Long version) {
+    return "\"%s-%s\"".formatted(id, version);
+  }
+
+  /**
+   * The version that an <code>If-Match</code> header expects a PUT to replace,
+   * or null when there is no header (or it is <code>*</code>) and the update is
+   * unconditional. A header that names no version of this row fails with 412.
+   */
+  protected Long ifMatchVersion(String ifMatch, Class<?> entityType, Object id) {
+    if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+      return null;
+    }
+    String prefix = "\"%s-".formatted(id);
+    for (String tag : ifMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith(prefix) && tag.endsWith("\"") && tag.length() > prefix.length() + 1) {
+        try {
+          return Long.valueOf(tag.substring(prefix.length(), tag.length() - 1));
+        } catch (NumberFormatException e) {
+          // not one of ours; keep looking
+        }
+      }
+    }
+    throw new PreconditionFailedException(entityType, id);
+  }
+
+  /**
+   * Replaces one row for a PUT and returns the row's new version.
+   *
+   * The client's version comes from <code>If-Match</code>, or else from the
+   * body. When there is one, the row is only replaced if it is still at that
+   * version, and otherwise the PUT fails with 412 (If-Match) or 409 (body).
+   * When there is none, the row is replaced at whatever version it has now.
+   * Either way the update is one statement, and the new version is known
+   * without reading the row back.
+   *
+   * @param currentVersion the row's version, or empty if there is no such row; only read when a conditional update fails
+   * @param updateIfVersion replaces the row if it is at the given version; returns the number of rows updated
+   * @param updateAnyVersion replaces the row whatever its version; returns the new version, or empty if there is no such row
+   */
+  protected long updateRow(Class<?> entityType, Object id, String ifMatch, Long bodyVersion,
+      Supplier<Optional<Long>> currentVersion, LongToIntFunction updateIfVersion,
+      Supplier<Optional<Long>> updateAnyVersion) {
+    // If-Match wins over a version in the body
+    Long ifMatchVersion = ifMatchVersion(ifMatch, entityType, id);
+    Long expectedVersion = ifMatchVersion != null ? ifMatchVersion : bodyVersion;
+
+    if (expectedVersion != null) {
+      if (updateIfVersion.applyAsInt(expectedVersion) > 0) {
+        return expectedVersion + 1;
+      }
+      if (currentVersion.get().isEmpty()) {
+        throw new EntityNotFoundException(entityType, id);
+      }
+      throw ifMatchVersion != null
+          ? new PreconditionFailedException(entityType, id)
+          : new ObjectOptimisticLockingFailureException(entityType, id);
+    }
+
+    return updateAnyVersion.get().orElseThrow(() -> new EntityNotFoundException(entityType, id));
+  }
+
   @ExceptionHandler({ EntityNotFoundException.class })
   @ResponseStatus(HttpStatus.NOT_FOUND)
   public Object handleGenericException(Throwable e) {
@@ -34,4 +155,23 @@ public abstract class ApiController {
       "message", e.getMessage()
     );
   }
+
+  @ExceptionHandler({ PreconditionFailedException.class })
+  @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+  public Object handlePreconditionFailed(Throwable e) {
+    return Map.of(
+      "type", e.getClass().getSimpleName(),
+      "message", e.getMessage()
+    );
+  }
+
+  // a write based on a version of the row that is no longer current
+  @ExceptionHandler({ OptimisticLockException.class, OptimisticLockingFailureException.class })
+  @ResponseStatus(HttpStatus.CONFLICT)
+  public Object handleOptimisticLockFailure(Throwable e) {
+    return Map.of(
+      "type", e.getClass().getSimpleName(),
+      "message", e.getMessage()
+    );
+  }
 }
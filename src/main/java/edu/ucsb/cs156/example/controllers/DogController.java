@@ -2,7 +2,13 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.Dog;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
 import edu.ucsb.cs156.example.repositories.DogRepository;
+import edu.ucsb.cs156.example.services.AutocompleteService;
+import edu.ucsb.cs156.example.services.EntityStreamingService;
+import edu.ucsb.cs156.example.services.ListQueryService;
+import edu.ucsb.cs156.example.services.TableChangeTracker;
+import edu.ucsb.cs156.example.services.TableWrite;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -10,18 +16,27 @@ import io.swagger.annotations.ApiParam;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 
+import java.util.List;
+import java.util.Set;
+
 @Api(description = "Dogs")
 @RequestMapping("/api/dogs")
 @RestController
@@ -30,27 +45,82 @@ public class DogController extends ApiController {
     @Autowired
     DogRepository dogRepository;
 
+    @Autowired
+    EntityStreamingService entityStreamingService;
+
+    @Autowired
+    TableChangeTracker tableChangeTracker;
+
+    @Autowired
+    ListQueryService listQueryService;
+
+    @Autowired
+    AutocompleteService autocompleteService;
+
+    static final Set<String> LIST_FIELDS = Set.of("id", "version", "name", "breed");
+
     @ApiOperation(value = "List all dogs")
-    @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Dog> allDogs() {
+    public ResponseEntity<Iterable<Dog>> allDogs(WebRequest request) {
+        if (request.checkNotModified(tableChangeTracker.listTag("dog"))) {
+            return null;
+        }
+
         Iterable<Dog> dogs = dogRepository.findAll();
-        return dogs;
+        return ResponseEntity.ok().cacheControl(REVALIDATE).body(dogs);
+    }
+
+    @ApiOperation(value = "Stream all dogs as newline-delimited JSON (for large tables)")
+    @GetMapping(value = "/all/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAllDogs() {
+        return entityStreamingService.ndjson(dogRepository::streamAll);
+    }
+
+    @ApiOperation(value = "List dogs one page at a time, ordered by id")
+    @GetMapping("/page")
+    public KeysetPage<Dog, Long> pageDogs(
+            @ApiParam("only return dogs with id after this cursor (the next value of the previous page)") @RequestParam(defaultValue = "0") long after,
+            @ApiParam("maximum number of dogs to return") @RequestParam(defaultValue = "100") int limit) {
+        Pageable request = keysetRequest(limit);
+        List<Dog> dogs = dogRepository.findByIdGreaterThanOrderByIdAsc(after, request);
+        return keysetPage(dogs, request, Dog::getId);
+    }
+
+    @ApiOperation(value = "List dogs, filtered, sorted and trimmed to the given fields by the database")
+    @GetMapping("/list")
+    public List<?> listDogs(
+            @ApiParam("only dogs with this name") @RequestParam(required = false) String name,
+            @ApiParam("only dogs of this breed") @RequestParam(required = false) String breed,
+            @ApiParam("sort keys, e.g. sort=breed&sort=name,desc") Sort sort,
+            @ApiParam("only return these fields, e.g. fields=id,name") @RequestParam(required = false) List<String> fields,
+            @ApiParam("maximum number of dogs to return") @RequestParam(defaultValue = "100") int limit) {
+        Specification<Dog> filter = Specification.where(ListQueryService.<Dog>fieldEquals("name", name))
+                .and(ListQueryService.fieldEquals("breed", breed));
+        return listQueryService.list(Dog.class, filter, sort, fields, LIST_FIELDS, pageSize(limit));
+    }
+
+    @ApiOperation(value = "Suggest breeds starting with what has been typed so far")
+    @GetMapping("/breeds")
+    public List<String> suggestBreeds(
+            @ApiParam("the start of a breed (case does not matter)") @RequestParam(defaultValue = "") String prefix,
+            @ApiParam("maximum number of breeds to return") @RequestParam(defaultValue = "10") int limit) {
+        return autocompleteService.breeds(prefix, limit);
     }
 
     @ApiOperation(value = "Get a single dog")
-    @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
-    public Dog getById(
+    public ResponseEntity<Dog> getById(
             @ApiParam("id") @RequestParam Long id) {
         Dog dog = dogRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException(Dog.class, id));
 
-        return dog;
+        return ResponseEntity.ok()
+                .eTag(entityTag(dog.getId(), dog.getVersion()))
+                .cacheControl(REVALIDATE)
+                .body(dog);
     }
 
     @ApiOperation(value = "Create a new dog")
-    @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PostMapping("/post")
     public Dog postDog(
             @ApiParam("name") @RequestParam String name,
@@ -63,35 +133,52 @@ public class DogController extends ApiController {
 
         Dog savedDog = dogRepository.save(dog);
 
+        tableWritten(TableWrite.saved("dog", List.of(savedDog)));
         return savedDog;
     }
 
+    @ApiOperation(value = "Create many dogs at once (ids are generated; any supplied id or version is ignored)")
+    @PostMapping("/bulk")
+    public Iterable<Dog> postDogs(
+            @ApiParam("list of dogs") @RequestBody @Valid List<Dog> incoming) {
+        incoming.forEach(dog -> {
+            dog.setId(0);
+            dog.setVersion(null);
+        });
+        Iterable<Dog> savedDogs = dogRepository.saveAll(incoming);
+        tableWritten(TableWrite.saved("dog", savedDogs));
+        return savedDogs;
+    }
+
     @ApiOperation(value = "Delete a Dog")
-    @PreAuthorize("hasRole('ROLE_ADMIN')")
     @DeleteMapping("")
     public Object deleteDog(
             @ApiParam("id") @RequestParam Long id) {
-        Dog dog = dogRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Dog.class, id));
+        if (dogRepository.deleteRowById(id) == 0) {
+            throw new EntityNotFoundException(Dog.class, id);
+        }
+        tableWritten(TableWrite.deleted("dog", id));
 
-        dogRepository.delete(dog);
         return genericMessage("Dog with id %s deleted".formatted(id));
     }
 
     @ApiOperation(value = "Update a single dog")
-    @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PutMapping("")
-    public Dog updateDog(
+    public ResponseEntity<Dog> updateDog(
             @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the dog as last read; the update fails with 412 if it has changed since") @RequestHeader(value = "If-Match", required = false) String ifMatch,
             @RequestBody @Valid Dog incoming) {
 
-        Dog dog = dogRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Dog.class, id));
-
-        dog.updateFrom(incoming);
-
-        dogRepository.save(dog);
-
-        return dog;
+        long version = updateRow(Dog.class, id, ifMatch, incoming.getVersion(),
+                () -> dogRepository.findVersionById(id),
+                expected -> dogRepository.updateRowByIdAndVersion(id, expected, incoming),
+                () -> dogRepository.updateRowReturningVersion(id, incoming));
+        incoming.setId(id);
+        incoming.setVersion(version);
+        tableWritten(TableWrite.saved("dog", List.of(incoming)));
+
+        return ResponseEntity.ok()
+                .eTag(entityTag(id, version))
+                .body(incoming);
     }
 }
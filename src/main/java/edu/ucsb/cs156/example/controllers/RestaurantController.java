@@ -2,7 +2,13 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.Restaurant;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
 import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+import edu.ucsb.cs156.example.services.EntityStreamingService;
+import edu.ucsb.cs156.example.services.ListQueryService;
+import edu.ucsb.cs156.example.services.TableChangeTracker;
+import edu.ucsb.cs156.example.services.TableWrite;
+import edu.ucsb.cs156.example.services.TextSearchService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -11,19 +17,28 @@ import lombok.extern.slf4j.Slf4j;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.ResponseEntity;
 import org.springframework.format.annotation.DateTimeFormat;
-import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 
+import java.util.List;
+import java.util.Set;
+
 import java.time.LocalDateTime;
 
 @Api(description = "Restaurants")
@@ -35,27 +50,83 @@ public class RestaurantController extends ApiController {
     @Autowired
     RestaurantRepository restaurantRepository;
 
+    @Autowired
+    EntityStreamingService entityStreamingService;
+
+    @Autowired
+    TableChangeTracker tableChangeTracker;
+
+    @Autowired
+    ListQueryService listQueryService;
+
+    @Autowired
+    TextSearchService textSearchService;
+
+    static final Set<String> LIST_FIELDS = Set.of("id", "version", "name", "description");
+
     @ApiOperation(value = "List all Restaurants")
-    @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Restaurant> allRestaurants() {
+    public ResponseEntity<Iterable<Restaurant>> allRestaurants(WebRequest request) {
+        if (request.checkNotModified(tableChangeTracker.listTag("restaurant"))) {
+            return null;
+        }
+
         Iterable<Restaurant> restaurants = restaurantRepository.findAll();
-        return restaurants;
+        return ResponseEntity.ok().cacheControl(REVALIDATE).body(restaurants);
+    }
+
+    @ApiOperation(value = "Stream all Restaurants as newline-delimited JSON (for large tables)")
+    @GetMapping(value = "/all/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAllRestaurants() {
+        return entityStreamingService.ndjson(restaurantRepository::streamAll);
+    }
+
+    @ApiOperation(value = "List Restaurants one page at a time, ordered by id")
+    @GetMapping("/page")
+    public KeysetPage<Restaurant, Long> pageRestaurants(
+            @ApiParam("only return Restaurants with id after this cursor (the next value of the previous page)") @RequestParam(defaultValue = "0") long after,
+            @ApiParam("maximum number of Restaurants to return") @RequestParam(defaultValue = "100") int limit) {
+        Pageable request = keysetRequest(limit);
+        List<Restaurant> restaurants = restaurantRepository.findByIdGreaterThanOrderByIdAsc(after, request);
+        return keysetPage(restaurants, request, Restaurant::getId);
+    }
+
+    @ApiOperation(value = "List Restaurants, filtered, sorted and trimmed to the given fields by the database")
+    @GetMapping("/list")
+    public List<?> listRestaurants(
+            @ApiParam("only Restaurants with this name") @RequestParam(required = false) String name,
+            @ApiParam("only Restaurants with this description") @RequestParam(required = false) String description,
+            @ApiParam("sort keys, e.g. sort=name") Sort sort,
+            @ApiParam("only return these fields, e.g. fields=id,name") @RequestParam(required = false) List<String> fields,
+            @ApiParam("maximum number of restaurants to return") @RequestParam(defaultValue = "100") int limit) {
+        Specification<Restaurant> filter = Specification.where(ListQueryService.<Restaurant>fieldEquals("name", name))
+                .and(ListQueryService.fieldEquals("description", description));
+        return listQueryService.list(Restaurant.class, filter, sort, fields, LIST_FIELDS, pageSize(limit));
+    }
+
+    @ApiOperation(value = "Search Restaurant names and descriptions, best matches first")
+    @GetMapping("/search")
+    public List<Restaurant> searchRestaurants(
+            @ApiParam("words to search for; a Restaurant matches when it contains all of them") @RequestParam String q,
+            @ApiParam("page number, starting at 0") @RequestParam(defaultValue = "0") int page,
+            @ApiParam("maximum number of Restaurants to return") @RequestParam(defaultValue = "20") int size) {
+        return textSearchService.searchRestaurants(q, pageRequest(page, size));
     }
 
     @ApiOperation(value = "Get a single Restaurant")
-    @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
-    public Restaurant getById(
+    public ResponseEntity<Restaurant> getById(
             @ApiParam("id") @RequestParam Long id) {
         Restaurant restaurant = restaurantRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException(Restaurant.class, id));
 
-        return restaurant;
+        return ResponseEntity.ok()
+                .eTag(entityTag(restaurant.getId(), restaurant.getVersion()))
+                .cacheControl(REVALIDATE)
+                .body(restaurant);
     }
 
     @ApiOperation(value = "Create a new Restaurant")
-    @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PostMapping("/post")
     public Restaurant postRestaurant(
             @ApiParam("name") @RequestParam String name,
@@ -67,35 +138,52 @@ public class RestaurantController extends ApiController {
         restaurant.setDescription(description);
 
         Restaurant savedRestaurant = restaurantRepository.save(restaurant);
+        tableWritten(TableWrite.saved("restaurant", List.of(savedRestaurant)));
         return savedRestaurant;
     }
 
+    @ApiOperation(value = "Create many restaurants at once (ids are generated; any supplied id or version is ignored)")
+    @PostMapping("/bulk")
+    public Iterable<Restaurant> postRestaurants(
+            @ApiParam("list of restaurants") @RequestBody @Valid List<Restaurant> incoming) {
+        incoming.forEach(restaurant -> {
+            restaurant.setId(0);
+            restaurant.setVersion(null);
+        });
+        Iterable<Restaurant> savedRestaurants = restaurantRepository.saveAll(incoming);
+        tableWritten(TableWrite.saved("restaurant", savedRestaurants));
+        return savedRestaurants;
+    }
+
     @ApiOperation(value = "Delete a Restaurant")
-    @PreAuthorize("hasRole('ROLE_ADMIN')")
     @DeleteMapping("")
     public Object deleteRestaurant(
             @ApiParam("id") @RequestParam Long id) {
-        Restaurant restaurant = restaurantRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Restaurant.class, id));
+        if (restaurantRepository.deleteRowById(id) == 0) {
+            throw new EntityNotFoundException(Restaurant.class, id);
+        }
+        tableWritten(TableWrite.deleted("restaurant", id));
 
-        restaurantRepository.delete(restaurant);
         return genericMessage("Restaurant with id %s deleted".formatted(id));
     }
 
     @ApiOperation(value = "Update a single Restaurant")
-    @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PutMapping("")
-    public Restaurant updateRestaurant(
+    public ResponseEntity<Restaurant> updateRestaurant(
             @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the restaurant as last read; the update fails with 412 if it has changed since") @RequestHeader(value = "If-Match", required = false) String ifMatch,
             @RequestBody @Valid Restaurant incoming) {
-    
-        Restaurant restaurant = restaurantRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Restaurant.class, id));
-    
-        restaurant.updateFrom(incoming);
-    
-        restaurantRepository.save(restaurant);
-    
-        return restaurant;
+
+        long version = updateRow(Restaurant.class, id, ifMatch, incoming.getVersion(),
+                () -> restaurantRepository.findVersionById(id),
+                expected -> restaurantRepository.updateRowByIdAndVersion(id, expected, incoming),
+                () -> restaurantRepository.updateRowReturningVersion(id, incoming));
+        incoming.setId(id);
+        incoming.setVersion(version);
+        tableWritten(TableWrite.saved("restaurant", List.of(incoming)));
+
+        return ResponseEntity.ok()
+                .eTag(entityTag(id, version))
+                .body(incoming);
     }
 }
\ No newline at end of file
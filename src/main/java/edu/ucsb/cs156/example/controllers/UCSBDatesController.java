@@ -2,7 +2,12 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.UCSBDate;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
 import edu.ucsb.cs156.example.repositories.UCSBDateRepository;
+import edu.ucsb.cs156.example.services.EntityStreamingService;
+import edu.ucsb.cs156.example.services.ListQueryService;
+import edu.ucsb.cs156.example.services.TableChangeTracker;
+import edu.ucsb.cs156.example.services.TableWrite;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -11,19 +16,28 @@ import lombok.extern.slf4j.Slf4j;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.ResponseEntity;
 import org.springframework.format.annotation.DateTimeFormat;
-import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 
+import java.util.List;
+import java.util.Set;
+
 import java.time.LocalDateTime;
 
 @Api(description = "UCSBDates")
@@ -35,27 +49,93 @@ public class UCSBDatesController extends ApiController {
     @Autowired
     UCSBDateRepository ucsbDateRepository;
 
+    @Autowired
+    EntityStreamingService entityStreamingService;
+
+    @Autowired
+    TableChangeTracker tableChangeTracker;
+
+    @Autowired
+    ListQueryService listQueryService;
+
+    static final Set<String> LIST_FIELDS = Set.of("id", "version", "quarterYYYYQ", "name", "localDateTime");
+
     @ApiOperation(value = "List all ucsb dates")
-    @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<UCSBDate> allUCSBDates() {
+    public ResponseEntity<Iterable<UCSBDate>> allUCSBDates(WebRequest request) {
+        if (request.checkNotModified(tableChangeTracker.listTag("ucsbdates"))) {
+            return null;
+        }
+
         Iterable<UCSBDate> dates = ucsbDateRepository.findAll();
-        return dates;
+        return ResponseEntity.ok().cacheControl(REVALIDATE).body(dates);
+    }
+
+    @ApiOperation(value = "Stream all ucsb dates as newline-delimited JSON (for large tables)")
+    @GetMapping(value = "/all/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAllUCSBDates() {
+        return entityStreamingService.ndjson(ucsbDateRepository::streamAll);
+    }
+
+    @ApiOperation(value = "List ucsb dates one page at a time, ordered by id")
+    @GetMapping("/page")
+    public KeysetPage<UCSBDate, Long> pageUCSBDates(
+            @ApiParam("only return ucsb dates with id after this cursor (the next value of the previous page)") @RequestParam(defaultValue = "0") long after,
+            @ApiParam("maximum number of ucsb dates to return") @RequestParam(defaultValue = "100") int limit) {
+        Pageable request = keysetRequest(limit);
+        List<UCSBDate> dates = ucsbDateRepository.findByIdGreaterThanOrderByIdAsc(after, request);
+        return keysetPage(dates, request, UCSBDate::getId);
+    }
+
+    @ApiOperation(value = "List the ucsb dates in one quarter, in date order")
+    @GetMapping("/quarter")
+    public List<UCSBDate> ucsbDatesInQuarter(
+            @ApiParam("quarter in YYYYQ format, e.g. 20232 for Spring 2023") @RequestParam String q,
+            @ApiParam("maximum number of ucsb dates to return") @RequestParam(defaultValue = "100") int limit) {
+        return ucsbDateRepository.findByQuarterYYYYQOrderByLocalDateTimeAsc(q, pageRequest(0, limit));
+    }
+
+    @ApiOperation(value = "List the ucsb dates from start (inclusive) to end (exclusive), in date order")
+    @GetMapping("/range")
+    public List<UCSBDate> ucsbDatesInRange(
+            @ApiParam("start of the range (in iso format, e.g. YYYY-mm-ddTHH:MM:SS)") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @ApiParam("end of the range (in iso format, e.g. YYYY-mm-ddTHH:MM:SS)") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @ApiParam("only return dates in this quarter (YYYYQ)") @RequestParam(required = false) String q,
+            @ApiParam("maximum number of ucsb dates to return") @RequestParam(defaultValue = "100") int limit) {
+        Pageable request = pageRequest(0, limit);
+        if (q == null) {
+            return ucsbDateRepository.findInRange(start, end, request);
+        }
+        return ucsbDateRepository.findInQuarterAndRange(q, start, end, request);
+    }
+
+    @ApiOperation(value = "List ucsb dates, filtered, sorted and trimmed to the given fields by the database")
+    @GetMapping("/list")
+    public List<?> listUCSBDates(
+            @ApiParam("only dates in this quarter (YYYYQ)") @RequestParam(required = false) String quarterYYYYQ,
+            @ApiParam("only dates with this name") @RequestParam(required = false) String name,
+            @ApiParam("sort keys, e.g. sort=localDateTime") Sort sort,
+            @ApiParam("only return these fields, e.g. fields=name,localDateTime") @RequestParam(required = false) List<String> fields,
+            @ApiParam("maximum number of dates to return") @RequestParam(defaultValue = "100") int limit) {
+        Specification<UCSBDate> filter = Specification.where(ListQueryService.<UCSBDate>fieldEquals("quarterYYYYQ", quarterYYYYQ))
+                .and(ListQueryService.fieldEquals("name", name));
+        return listQueryService.list(UCSBDate.class, filter, sort, fields, LIST_FIELDS, pageSize(limit));
     }
 
     @ApiOperation(value = "Get a single date")
-    @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
-    public UCSBDate getById(
+    public ResponseEntity<UCSBDate> getById(
             @ApiParam("id") @RequestParam Long id) {
         UCSBDate ucsbDate = ucsbDateRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException(UCSBDate.class, id));
 
-        return ucsbDate;
+        return ResponseEntity.ok()
+                .eTag(entityTag(ucsbDate.getId(), ucsbDate.getVersion()))
+                .cacheControl(REVALIDATE)
+                .body(ucsbDate);
     }
 
     @ApiOperation(value = "Create a new date")
-    @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PostMapping("/post")
     public UCSBDate postUCSBDate(
             @ApiParam("quarterYYYYQ") @RequestParam String quarterYYYYQ,
@@ -75,37 +155,39 @@ public class UCSBDatesController extends ApiController {
 
         UCSBDate savedUcsbDate = ucsbDateRepository.save(ucsbDate);
 
+        tableWritten(TableWrite.saved("ucsbdates", List.of(savedUcsbDate)));
         return savedUcsbDate;
     }
 
     @ApiOperation(value = "Delete a UCSBDate")
-    @PreAuthorize("hasRole('ROLE_ADMIN')")
     @DeleteMapping("")
     public Object deleteUCSBDate(
             @ApiParam("id") @RequestParam Long id) {
-        UCSBDate ucsbDate = ucsbDateRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(UCSBDate.class, id));
+        if (ucsbDateRepository.deleteRowById(id) == 0) {
+            throw new EntityNotFoundException(UCSBDate.class, id);
+        }
+        tableWritten(TableWrite.deleted("ucsbdates", id));
 
-        ucsbDateRepository.delete(ucsbDate);
         return genericMessage("UCSBDate with id %s deleted".formatted(id));
     }
 
     @ApiOperation(value = "Update a single date")
-    @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PutMapping("")
-    public UCSBDate updateUCSBDate(
+    public ResponseEntity<UCSBDate> updateUCSBDate(
             @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the date as last read; the update fails with 412 if it has changed since") @RequestHeader(value = "If-Match", required = false) String ifMatch,
             @RequestBody @Valid UCSBDate incoming) {
 
-        UCSBDate ucsbDate = ucsbDateRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(UCSBDate.class, id));
-
-        ucsbDate.setQuarterYYYYQ(incoming.getQuarterYYYYQ());
-        ucsbDate.setName(incoming.getName());
-        ucsbDate.setLocalDateTime(incoming.getLocalDateTime());
-
-        ucsbDateRepository.save(ucsbDate);
-
-        return ucsbDate;
+        long version = updateRow(UCSBDate.class, id, ifMatch, incoming.getVersion(),
+                () -> ucsbDateRepository.findVersionById(id),
+                expected -> ucsbDateRepository.updateRowByIdAndVersion(id, expected, incoming),
+                () -> ucsbDateRepository.updateRowReturningVersion(id, incoming));
+        incoming.setId(id);
+        incoming.setVersion(version);
+        tableWritten(TableWrite.saved("ucsbdates", List.of(incoming)));
+
+        return ResponseEntity.ok()
+                .eTag(entityTag(id, version))
+                .body(incoming);
     }
 }
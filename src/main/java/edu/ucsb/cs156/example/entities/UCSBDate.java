@@ -2,10 +2,17 @@ package edu.ucsb.cs156.example.entities;
 
 import java.time.LocalDateTime;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 import javax.persistence.GeneratedValue;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.ColumnDefault;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -17,11 +24,21 @@ import lombok.Builder;
 @NoArgsConstructor
 @Builder
 @Entity(name = "ucsbdates")
+@Table(name = "ucsbdates", indexes = {
+    @Index(name = "ucsbdates_quarter_date_idx", columnList = "quarterYYYYQ, localDateTime"),
+    @Index(name = "ucsbdates_date_idx", columnList = "localDateTime")
+})
 public class UCSBDate {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ucsbdate_seq")
+  @SequenceGenerator(name = "ucsbdate_seq", sequenceName = "ucsbdate_seq", allocationSize = 50)
   private long id;
 
+  @Version
+  @Column(nullable = false)
+  @ColumnDefault("0")
+  private Long version;
+
   private String quarterYYYYQ;
   private String name;  
   private LocalDateTime localDateTime;
@@ -0,0 +1,8 @@
+package edu.ucsb.cs156.example.errors;
+
+public class PreconditionFailedException extends RuntimeException {
+  public PreconditionFailedException(Class<?> entityType, Object id) {
+    super("%s with id %s has been modified since it was read"
+      .formatted(entityType.getSimpleName(), id.toString()));
+  }
+}
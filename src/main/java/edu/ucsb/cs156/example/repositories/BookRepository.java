@@ -2,10 +2,59 @@ package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.Book;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 
 @Repository
-public interface BookRepository extends CrudRepository<Book, Long> {
-}
\ No newline at end of file
+public interface BookRepository extends CrudRepository<Book, Long>, RowUpdateRepository<Book, Long> {
+  List<Book> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select b from book b")
+  Stream<Book> streamAll();
+
+  // PostgreSQL only: the tsvector expression must match book_search_idx (V11) for the index to be used
+  @Query(value = """
+      select b.* from book b
+      where to_tsvector('english', coalesce(b.title, '') || ' ' || coalesce(b.author, '')) @@ plainto_tsquery('english', :q)
+      order by ts_rank(to_tsvector('english', coalesce(b.title, '') || ' ' || coalesce(b.author, '')), plainto_tsquery('english', :q)) desc, b.id
+      """, nativeQuery = true)
+  List<Book> searchText(@Param("q") String q, Pageable pageable);
+
+  @Modifying
+  @Transactional
+  @Query("delete from book b where b.id = :id")
+  int deleteRowById(@Param("id") long id);
+
+  @Query("select b.version from book b where b.id = :id")
+  Optional<Long> findVersionById(@Param("id") long id);
+
+  // only replaces the row if it is still at the version the client read
+  @Modifying
+  @Transactional
+  @Query("""
+      update book b
+      set b.title = :#{#book.title},
+          b.author = :#{#book.author},
+          b.year = :#{#book.year},
+          b.version = b.version + 1
+      where b.id = :id and b.version = :version
+      """)
+  int updateRowByIdAndVersion(@Param("id") long id, @Param("version") long version, @Param("book") Book book);
+}
@@ -0,0 +1,38 @@
+package edu.ucsb.cs156.example.repositories;
+
+import java.sql.DatabaseMetaData;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tells repository code that needs vendor-specific SQL which database it is
+ * talking to (PostgreSQL in production, H2 on localhost and in tests).
+ */
+
+@Component
+public class DatabaseVendor {
+  @Autowired
+  private DataSource dataSource;
+
+  private volatile String productName;
+
+  public boolean isPostgres() {
+    return "PostgreSQL".equals(getProductName());
+  }
+
+  private String getProductName() {
+    if (productName == null) {
+      try {
+        productName = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+      } catch (MetaDataAccessException e) {
+        throw new IllegalStateException("Unable to determine the database vendor", e);
+      }
+    }
+    return productName;
+  }
+}
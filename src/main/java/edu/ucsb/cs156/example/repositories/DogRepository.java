@@ -2,9 +2,49 @@ package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.Dog;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
-public interface DogRepository extends CrudRepository<Dog, Long> {
+public interface DogRepository extends CrudRepository<Dog, Long>, RowUpdateRepository<Dog, Long> {
+  List<Dog> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select d from dog d")
+  Stream<Dog> streamAll();
+
+  @Modifying
+  @Transactional
+  @Query("delete from dog d where d.id = :id")
+  int deleteRowById(@Param("id") long id);
+
+  @Query("select d.version from dog d where d.id = :id")
+  Optional<Long> findVersionById(@Param("id") long id);
+
+  // only replaces the row if it is still at the version the client read
+  @Modifying
+  @Transactional
+  @Query("""
+      update dog d
+      set d.name = :#{#dog.name},
+          d.breed = :#{#dog.breed},
+          d.version = d.version + 1
+      where d.id = :id and d.version = :version
+      """)
+  int updateRowByIdAndVersion(@Param("id") long id, @Param("version") long version, @Param("dog") Dog dog);
 }
@@ -1,9 +1,57 @@
 package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.Restaurant;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
-public interface RestaurantRepository extends CrudRepository<Restaurant, Long> {
+public interface RestaurantRepository extends CrudRepository<Restaurant, Long>, RowUpdateRepository<Restaurant, Long> {
+  List<Restaurant> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select r from Restaurant r")
+  Stream<Restaurant> streamAll();
+
+  // PostgreSQL only: the tsvector expression must match restaurant_search_idx (V11) for the index to be used
+  @Query(value = """
+      select r.* from restaurant r
+      where to_tsvector('english', coalesce(r.name, '') || ' ' || coalesce(r.description, '')) @@ plainto_tsquery('english', :q)
+      order by ts_rank(to_tsvector('english', coalesce(r.name, '') || ' ' || coalesce(r.description, '')), plainto_tsquery('english', :q)) desc, r.id
+      """, nativeQuery = true)
+  List<Restaurant> searchText(@Param("q") String q, Pageable pageable);
+
+  @Modifying
+  @Transactional
+  @Query("delete from Restaurant r where r.id = :id")
+  int deleteRowById(@Param("id") long id);
+
+  @Query("select r.version from Restaurant r where r.id = :id")
+  Optional<Long> findVersionById(@Param("id") long id);
+
+  // only replaces the row if it is still at the version the client read
+  @Modifying
+  @Transactional
+  @Query("""
+      update Restaurant r
+      set r.name = :#{#restaurant.name},
+          r.description = :#{#restaurant.description},
+          r.version = r.version + 1
+      where r.id = :id and r.version = :version
+      """)
+  int updateRowByIdAndVersion(@Param("id") long id, @Param("version") long version, @Param("restaurant") Restaurant restaurant);
 }
@@ -0,0 +1,18 @@
+package edu.ucsb.cs156.example.repositories;
+
+import java.util.Optional;
+
+/**
+ * Shared by the repositories of the tables that the API lets clients PUT.
+ */
+public interface RowUpdateRepository<T, ID> {
+  /**
+   * Replaces the row with the given id by <code>row</code>, whatever version
+   * it is at, and moves its version on by one. This is a single statement that
+   * also returns the new version, so the caller does not have to read the row
+   * back.
+   *
+   * @return the row's new version, or empty if there is no such row
+   */
+  Optional<Long> updateRowReturningVersion(ID id, T row);
+}
@@ -0,0 +1,84 @@
+package edu.ucsb.cs156.example.repositories;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Optional;
+import java.util.StringJoiner;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.query.NativeQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+public class RowUpdateRepositoryImpl<T, ID> implements RowUpdateRepository<T, ID> {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Autowired
+  private DatabaseVendor databaseVendor;
+
+  @Override
+  @Transactional
+  public Optional<Long> updateRowReturningVersion(ID id, T row) {
+    Session session = entityManager.unwrap(Session.class);
+    SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) session.getSessionFactory();
+    AbstractEntityPersister persister = (AbstractEntityPersister) sessionFactory.getMetamodel()
+        .entityPersister(row.getClass());
+
+    // the UPDATE is built from the mapping, so it always sets the same columns
+    // that Hibernate would; the version is the one column it computes itself
+    String version = persister.getVersionColumnName();
+    StringJoiner columns = new StringJoiner(", ");
+    for (int i = 0; i < persister.getPropertyNames().length; i++) {
+      if (i != persister.getVersionProperty() && persister.getPropertyUpdateability()[i]) {
+        columns.add("%s = :p%d".formatted(persister.getPropertyColumnNames(i)[0], i));
+      }
+    }
+    columns.add("%s = %s + 1".formatted(version, version));
+    String update = "UPDATE %s SET %s WHERE %s = :id"
+        .formatted(persister.getTableName(), columns, persister.getIdentifierColumnNames()[0]);
+
+    if (databaseVendor.isPostgres()) {
+      NativeQuery<?> query = session.createNativeQuery("%s RETURNING %s".formatted(update, version));
+      bind(query, persister, id, row);
+      List<?> versions = query.getResultList();
+      // run as a query, the statement does not evict the row from the
+      // second-level cache the way executeUpdate does
+      if (persister.canWriteToCache()) {
+        sessionFactory.getCache().evictEntityData(row.getClass(), (Serializable) id);
+      }
+      return versions.stream().findFirst().map(v -> ((Number) v).longValue());
+    }
+
+    // H2 has no UPDATE ... RETURNING (and 1.4.200 ignores the update in a
+    // prepared SELECT ... FROM NEW TABLE (UPDATE ...)), so the version is read
+    // back after the update
+    NativeQuery<?> query = session.createNativeQuery(update).addSynchronizedEntityClass(row.getClass());
+    bind(query, persister, id, row);
+    if (query.executeUpdate() == 0) {
+      return Optional.empty();
+    }
+    Object newVersion = session.createNativeQuery("SELECT %s FROM %s WHERE %s = :id"
+        .formatted(version, persister.getTableName(), persister.getIdentifierColumnNames()[0]))
+        .setParameter("id", id, persister.getIdentifierType())
+        .getSingleResult();
+    return Optional.of(((Number) newVersion).longValue());
+  }
+
+  // explicit types, since untyped nulls are bound as bytea on PostgreSQL
+  private static void bind(NativeQuery<?> query, AbstractEntityPersister persister, Object id, Object row) {
+    Object[] values = persister.getPropertyValues(row);
+    for (int i = 0; i < values.length; i++) {
+      if (i != persister.getVersionProperty() && persister.getPropertyUpdateability()[i]) {
+        query.setParameter("p" + i, values[i], persister.getPropertyTypes()[i]);
+      }
+    }
+    query.setParameter("id", id, persister.getIdentifierType());
+  }
+}
@@ -2,11 +2,66 @@ package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.UCSBDate;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 
 @Repository
-public interface UCSBDateRepository extends CrudRepository<UCSBDate, Long> {
+public interface UCSBDateRepository extends CrudRepository<UCSBDate, Long>, RowUpdateRepository<UCSBDate, Long> {
   Iterable<UCSBDate> findAllByQuarterYYYYQ(String quarterYYYYQ);
-}
\ No newline at end of file
+  List<UCSBDate> findByQuarterYYYYQOrderByLocalDateTimeAsc(String quarterYYYYQ, Pageable pageable);
+
+  // [start, end), so that consecutive ranges do not overlap
+  @Query("select d from ucsbdates d where d.localDateTime >= :start and d.localDateTime < :end order by d.localDateTime")
+  List<UCSBDate> findInRange(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end, Pageable pageable);
+
+  @Query("""
+      select d from ucsbdates d
+      where d.quarterYYYYQ = :quarterYYYYQ and d.localDateTime >= :start and d.localDateTime < :end
+      order by d.localDateTime
+      """)
+  List<UCSBDate> findInQuarterAndRange(@Param("quarterYYYYQ") String quarterYYYYQ,
+      @Param("start") LocalDateTime start, @Param("end") LocalDateTime end, Pageable pageable);
+  List<UCSBDate> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select d from ucsbdates d")
+  Stream<UCSBDate> streamAll();
+
+  @Modifying
+  @Transactional
+  @Query("delete from ucsbdates d where d.id = :id")
+  int deleteRowById(@Param("id") long id);
+
+  @Query("select d.version from ucsbdates d where d.id = :id")
+  Optional<Long> findVersionById(@Param("id") long id);
+
+  // only replaces the row if it is still at the version the client read
+  @Modifying
+  @Transactional
+  @Query("""
+      update ucsbdates d
+      set d.quarterYYYYQ = :#{#ucsbDate.quarterYYYYQ},
+          d.name = :#{#ucsbDate.name},
+          d.localDateTime = :#{#ucsbDate.localDateTime},
+          d.version = d.version + 1
+      where d.id = :id and d.version = :version
+      """)
+  int updateRowByIdAndVersion(@Param("id") long id, @Param("version") long version, @Param("ucsbDate") UCSBDate ucsbDate);
+}
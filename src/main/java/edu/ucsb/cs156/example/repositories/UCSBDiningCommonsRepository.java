@@ -3,11 +3,59 @@ package edu.ucsb.cs156.example.repositories;
 import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
 
 import org.springframework.beans.propertyeditors.StringArrayPropertyEditor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 
 @Repository
-public interface UCSBDiningCommonsRepository extends CrudRepository<UCSBDiningCommons, String> {
- 
-}
\ No newline at end of file
+public interface UCSBDiningCommonsRepository extends CrudRepository<UCSBDiningCommons, String>, RowUpdateRepository<UCSBDiningCommons, String> {
+  // served from the query cache (and the rows from the second-level cache) until a commons changes
+  @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+  Iterable<UCSBDiningCommons> findAll();
+
+  List<UCSBDiningCommons> findByCodeGreaterThanOrderByCodeAsc(String code, Pageable pageable);
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select c from ucsbdiningcommons c")
+  Stream<UCSBDiningCommons> streamAll();
+
+  @Modifying
+  @Transactional
+  @Query("delete from ucsbdiningcommons c where c.code = :code")
+  int deleteRowByCode(@Param("code") String code);
+
+  @Query("select c.version from ucsbdiningcommons c where c.code = :code")
+  Optional<Long> findVersionByCode(@Param("code") String code);
+
+  // only replaces the row if it is still at the version the client read
+  @Modifying
+  @Transactional
+  @Query("""
+      update ucsbdiningcommons c
+      set c.name = :#{#commons.name},
+          c.hasSackMeal = :#{#commons.hasSackMeal},
+          c.hasTakeOutMeal = :#{#commons.hasTakeOutMeal},
+          c.hasDiningCam = :#{#commons.hasDiningCam},
+          c.latitude = :#{#commons.latitude},
+          c.longitude = :#{#commons.longitude},
+          c.version = c.version + 1
+      where c.code = :code and c.version = :version
+      """)
+  int updateRowByCodeAndVersion(@Param("code") String code, @Param("version") long version, @Param("commons") UCSBDiningCommons commons);
+}
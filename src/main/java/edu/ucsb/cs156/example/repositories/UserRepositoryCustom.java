@@ -0,0 +1,14 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.entities.User;
+
+public interface UserRepositoryCustom {
+  /**
+   * Inserts the user, or, if a row with the same email already exists,
+   * keeps that row (promoting it to admin if <code>user</code> is an admin).
+   * Safe to call concurrently for the same email.
+   *
+   * @return the row as stored in the database
+   */
+  User upsertByEmail(User user);
+}
@@ -0,0 +1,89 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.entities.User;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.BooleanType;
+import org.hibernate.type.StringType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+  // One statement: the unique index on users.email arbitrates concurrent first logins.
+  // The version only moves when the row really changes, i.e. when a user is promoted to admin.
+  private static final String POSTGRES_UPSERT = """
+      INSERT INTO users (id, version, email, google_sub, picture_url, full_name, given_name, family_name,
+                         email_verified, locale, hosted_domain, admin)
+      VALUES (nextval('users_seq'), 0, :email, :googleSub, :pictureUrl, :fullName, :givenName, :familyName,
+              :emailVerified, :locale, :hostedDomain, :admin)
+      ON CONFLICT (email) DO UPDATE SET admin = users.admin OR EXCLUDED.admin,
+        version = users.version + CASE WHEN EXCLUDED.admin AND NOT users.admin THEN 1 ELSE 0 END
+      RETURNING *
+      """;
+
+  // H2 has no INSERT ... RETURNING, so the row is read back after the MERGE
+  private static final String H2_UPSERT = """
+      MERGE INTO users u
+      USING (SELECT CAST(:email AS VARCHAR(255)) AS email,
+                    CAST(:googleSub AS VARCHAR(255)) AS google_sub,
+                    CAST(:pictureUrl AS VARCHAR(255)) AS picture_url,
+                    CAST(:fullName AS VARCHAR(255)) AS full_name,
+                    CAST(:givenName AS VARCHAR(255)) AS given_name,
+                    CAST(:familyName AS VARCHAR(255)) AS family_name,
+                    CAST(:emailVerified AS BOOLEAN) AS email_verified,
+                    CAST(:locale AS VARCHAR(255)) AS locale,
+                    CAST(:hostedDomain AS VARCHAR(255)) AS hosted_domain,
+                    CAST(:admin AS BOOLEAN) AS admin) v
+      ON (u.email = v.email)
+      WHEN MATCHED THEN UPDATE SET admin = (u.admin OR v.admin),
+        version = u.version + CASE WHEN v.admin AND NOT u.admin THEN 1 ELSE 0 END
+      WHEN NOT MATCHED THEN INSERT (id, version, email, google_sub, picture_url, full_name, given_name, family_name,
+                                    email_verified, locale, hosted_domain, admin)
+        VALUES (NEXT VALUE FOR users_seq, 0, v.email, v.google_sub, v.picture_url, v.full_name, v.given_name, v.family_name,
+                v.email_verified, v.locale, v.hosted_domain, v.admin)
+      """;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Autowired
+  private DatabaseVendor databaseVendor;
+
+  @Override
+  @Transactional
+  public User upsertByEmail(User user) {
+    Session session = entityManager.unwrap(Session.class);
+
+    if (databaseVendor.isPostgres()) {
+      NativeQuery<User> upsert = session.createNativeQuery(POSTGRES_UPSERT, User.class);
+      bind(upsert, user);
+      return upsert.getSingleResult();
+    }
+
+    NativeQuery<?> merge = session.createNativeQuery(H2_UPSERT);
+    bind(merge, user);
+    merge.executeUpdate();
+    return entityManager.createQuery("select u from users u where u.email = :email", User.class)
+        .setParameter("email", user.getEmail())
+        .getSingleResult();
+  }
+
+  // explicit types, since untyped nulls are bound as bytea on PostgreSQL
+  private void bind(NativeQuery<?> query, User user) {
+    query.setParameter("email", user.getEmail(), StringType.INSTANCE)
+        .setParameter("googleSub", user.getGoogleSub(), StringType.INSTANCE)
+        .setParameter("pictureUrl", user.getPictureUrl(), StringType.INSTANCE)
+        .setParameter("fullName", user.getFullName(), StringType.INSTANCE)
+        .setParameter("givenName", user.getGivenName(), StringType.INSTANCE)
+        .setParameter("familyName", user.getFamilyName(), StringType.INSTANCE)
+        .setParameter("emailVerified", user.getEmailVerified(), BooleanType.INSTANCE)
+        .setParameter("locale", user.getLocale(), StringType.INSTANCE)
+        .setParameter("hostedDomain", user.getHostedDomain(), StringType.INSTANCE)
+        .setParameter("admin", user.getAdmin(), BooleanType.INSTANCE);
+  }
+}
@@ -0,0 +1,92 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Dog;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+import edu.ucsb.cs156.example.repositories.DogRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Typeahead suggestions for dog breeds and book authors, answered from
+ * memory so that a keystroke never costs a <code>LIKE 'x%'</code> query.
+ *
+ * Each column is loaded into a {@link PrefixIndex} when the application
+ * starts, and kept current from {@link TableWrite} events.
+ */
+
+@Slf4j
+@Service("autocomplete")
+public class AutocompleteService {
+  public static final int MAX_SUGGESTIONS = 50;
+
+  @Autowired
+  private DogRepository dogRepository;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private EntityStreamingService entityStreamingService;
+
+  @Value("${app.autocomplete.maxValues:10000}")
+  private int maxValues;
+
+  @Value("${app.autocomplete.maxRows:100000}")
+  private int maxRows;
+
+  private PrefixIndex dogBreeds;
+
+  private PrefixIndex bookAuthors;
+
+  @PostConstruct
+  void createIndexes() {
+    dogBreeds = new PrefixIndex(maxValues, maxRows);
+    bookAuthors = new PrefixIndex(maxValues, maxRows);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void buildIndexes() {
+    dogBreeds.clear();
+    entityStreamingService.forEachRow(dogRepository::streamAll, dog -> dogBreeds.put(dog.getId(), dog.getBreed()));
+    bookAuthors.clear();
+    entityStreamingService.forEachRow(bookRepository::streamAll,
+        book -> bookAuthors.put(book.getId(), book.getAuthor()));
+    log.info("Indexed {} dog breeds and {} book authors for autocomplete", dogBreeds.size(), bookAuthors.size());
+  }
+
+  public List<String> breeds(String prefix, int limit) {
+    return dogBreeds.complete(prefix, clamp(limit));
+  }
+
+  public List<String> authors(String prefix, int limit) {
+    return bookAuthors.complete(prefix, clamp(limit));
+  }
+
+  @Order(TableChangeTracker.LISTENER_ORDER - 1)
+  @TransactionalEventListener(fallbackExecution = true)
+  public void tableWritten(TableWrite write) {
+    if (write.isTo("dog")) {
+      write.getSaved(Dog.class).forEach(dog -> dogBreeds.put(dog.getId(), dog.getBreed()));
+      write.getDeletedIds(Long.class).forEach(dogBreeds::remove);
+    } else if (write.isTo("book")) {
+      write.getSaved(Book.class).forEach(book -> bookAuthors.put(book.getId(), book.getAuthor()));
+      write.getDeletedIds(Long.class).forEach(bookAuthors::remove);
+    }
+  }
+
+  private static int clamp(int limit) {
+    return Math.min(Math.max(limit, 1), MAX_SUGGESTIONS);
+  }
+}
@@ -5,10 +5,19 @@ import edu.ucsb.cs156.example.models.CurrentUser;
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
-import java.util.Optional;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -30,8 +39,39 @@ public class CurrentUserServiceImpl extends CurrentUserService {
   @Autowired
   GrantedAuthoritiesService grantedAuthoritiesService;
 
+  @Autowired(required = false)
+  private MeterRegistry meterRegistry;
+
   @Value("${app.admin.emails}")
-  final private List<String> adminEmails = new ArrayList<String>();
+  final private Set<String> adminEmails = new HashSet<String>();
+
+  @Value("${app.currentUser.cache.maximumSize:10000}")
+  private long cacheMaximumSize;
+
+  @Value("${app.currentUser.cache.ttlSeconds:300}")
+  private long cacheTtlSeconds;
+
+  // Users already looked up (or provisioned) in the database, keyed by email,
+  // so that /api/currentUser does not hit the users table on every page load.
+  // Entries only expire with the TTL: the login upsert is the one place the
+  // app writes users, and its result is what gets cached, so only edits made
+  // directly in the database (e.g. promoting an admin) wait for the TTL.
+  private Cache<String, User> usersByEmail;
+
+  Ticker ticker = Ticker.systemTicker();
+
+  @PostConstruct
+  void buildUserCache() {
+    usersByEmail = Caffeine.newBuilder()
+        .maximumSize(cacheMaximumSize)
+        .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+        .ticker(ticker)
+        .recordStats()
+        .build();
+    if (meterRegistry != null) {
+      CaffeineCacheMetrics.monitor(meterRegistry, usersByEmail, "currentUser");
+    }
+  }
 
   public CurrentUser getCurrentUser() {
     CurrentUser cu = CurrentUser.builder()
@@ -45,6 +85,12 @@ public class CurrentUserServiceImpl extends CurrentUserService {
   
   public User getOAuth2AuthenticatedUser(SecurityContext securityContext, Authentication authentication) {
     OAuth2User oAuthUser = ((OAuth2AuthenticationToken) authentication).getPrincipal();
+    String email = oAuthUser.getAttribute("email");
+    // concurrent requests for the same email wait for a single upsert
+    return usersByEmail.get(email, key -> loadOrCreateUser(oAuthUser));
+  }
+
+  private User loadOrCreateUser(OAuth2User oAuthUser) {
     String email = oAuthUser.getAttribute("email");
     String googleSub = oAuthUser.getAttribute("sub");
     String pictureUrl = oAuthUser.getAttribute("picture");
@@ -56,17 +102,7 @@ public class CurrentUserServiceImpl extends CurrentUserService {
     String hostedDomain = oAuthUser.getAttribute("hd");
 
     java.util.Map<java.lang.String,java.lang.Object> attrs = oAuthUser.getAttributes();
-    log.info("attrs={}",attrs);
-
-    Optional<User> ou = userRepository.findByEmail(email);
-    if (ou.isPresent()) {
-      User u = ou.get();
-      if (adminEmails.contains(email) && !u.getAdmin()) {
-        u.setAdmin(true);
-        userRepository.save(u);
-      }
-      return u;
-    }
+    log.debug("attrs={}",attrs);
 
     User u = User.builder()
         .googleSub(googleSub)
@@ -80,8 +116,7 @@ public class CurrentUserServiceImpl extends CurrentUserService {
         .hostedDomain(hostedDomain)
         .admin(adminEmails.contains(email))
         .build();
-    userRepository.save(u);
-    return u;
+    return userRepository.upsertByEmail(u);
   }
 
   public User getUser() {
@@ -0,0 +1,75 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+
+/**
+ * Finds the dining commons nearest to a point, using a {@link KdTree} over
+ * the commons that have a latitude and longitude.
+ *
+ * Positions are placed on the unit sphere, where the straight-line distance
+ * between two points grows with the great-circle distance. So the tree's
+ * nearest neighbours are the nearest on the ground too, with no trouble at
+ * the date line or the poles.
+ *
+ * The tree is built on the first query and dropped on every
+ * {@link TableWrite} to the commons table.
+ */
+
+@Service("diningCommonsLocator")
+public class DiningCommonsLocator {
+  @Autowired
+  private UCSBDiningCommonsRepository ucsbDiningCommonsRepository;
+
+  private volatile KdTree<UCSBDiningCommons> tree;
+
+  /** @return the (at most) k nearest commons, nearest first */
+  public List<UCSBDiningCommons> nearest(double latitude, double longitude, int k) {
+    KdTree<UCSBDiningCommons> current = tree;
+    if (current == null) {
+      current = build();
+    }
+    return current.nearest(toPoint(latitude, longitude), k);
+  }
+
+  @Order(TableChangeTracker.LISTENER_ORDER - 1)
+  @TransactionalEventListener(fallbackExecution = true)
+  public void tableWritten(TableWrite write) {
+    if (write.isTo("ucsbdiningcommons")) {
+      invalidate();
+    }
+  }
+
+  public synchronized void invalidate() {
+    tree = null;
+  }
+
+  /** Unit vector for a latitude and longitude given in degrees. */
+  public static double[] toPoint(double latitude, double longitude) {
+    double lat = Math.toRadians(latitude);
+    double lon = Math.toRadians(longitude);
+    return new double[] { Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat) };
+  }
+
+  // synchronized with invalidate(), so a build that read the table before a write cannot outlive it
+  private synchronized KdTree<UCSBDiningCommons> build() {
+    if (tree == null) {
+      List<UCSBDiningCommons> located = new ArrayList<>();
+      for (UCSBDiningCommons commons : ucsbDiningCommonsRepository.findAll()) {
+        if (commons.getLatitude() != null && commons.getLongitude() != null) {
+          located.add(commons);
+        }
+      }
+      tree = KdTree.build(located, commons -> toPoint(commons.getLatitude(), commons.getLongitude()));
+    }
+    return tree;
+  }
+}
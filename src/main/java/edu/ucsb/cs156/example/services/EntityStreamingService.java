@@ -0,0 +1,85 @@
+package edu.ucsb.cs156.example.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Writes a whole table as newline-delimited JSON (one entity per line)
+ * without ever holding more than one fetch-size worth of rows in memory.
+ *
+ * The rows come from a repository method returning a JPA <code>Stream</code>;
+ * since such a stream needs an open transaction (and connection) for as long
+ * as it is consumed, the transaction is started here, on the thread that
+ * writes the response, rather than in the controller.
+ *
+ * {@link #forEachRow} is the same walk without the JSON, for code that
+ * builds an in-memory index from a whole table.
+ */
+
+@Service("entityStreaming")
+public class EntityStreamingService {
+  public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private ObjectMapper mapper;
+
+  public <T> ResponseEntity<StreamingResponseBody> ndjson(Supplier<Stream<T>> rows) {
+    StreamingResponseBody body = out -> writeNdjson(rows, out);
+    return ResponseEntity.ok()
+        .contentType(APPLICATION_NDJSON)
+        .body(body);
+  }
+
+  public <T> void writeNdjson(Supplier<Stream<T>> rows, OutputStream out) {
+    ObjectWriter writer = mapper.writer();
+    forEachRow(rows, row -> {
+      try {
+        out.write(writer.writeValueAsBytes(row));
+        out.write('\n');
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Hands each row to <code>action</code> inside a read-only transaction,
+   * detaching it afterwards so that the persistence context doesn't grow with
+   * the table.
+   */
+  public <T> void forEachRow(Supplier<Stream<T>> rows, Consumer<T> action) {
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    transaction.setReadOnly(true);
+    transaction.executeWithoutResult(status -> {
+      try (Stream<T> stream = rows.get()) {
+        stream.forEach(row -> {
+          action.accept(row);
+          entityManager.detach(row);
+        });
+      }
+    });
+  }
+}
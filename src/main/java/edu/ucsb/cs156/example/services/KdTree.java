@@ -0,0 +1,119 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * An immutable k-d tree for k-nearest-neighbour queries under Euclidean
+ * distance. Points are built once; to change them, build a new tree.
+ */
+
+public class KdTree<T> {
+  private final Node<T> root;
+  private final int size;
+
+  private static final class Node<T> {
+    private final T value;
+    private final double[] point;
+    private final int axis;
+    private Node<T> left;
+    private Node<T> right;
+
+    private Node(T value, double[] point, int axis) {
+      this.value = value;
+      this.point = point;
+      this.axis = axis;
+    }
+  }
+
+  private static final class Candidate<T> {
+    private final T value;
+    private final double distanceSquared;
+
+    private Candidate(T value, double distanceSquared) {
+      this.value = value;
+      this.distanceSquared = distanceSquared;
+    }
+  }
+
+  private KdTree(Node<T> root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  /** @param pointOf coordinates of each value; all must have the same number of dimensions */
+  public static <T> KdTree<T> build(Collection<T> values, Function<T, double[]> pointOf) {
+    List<Node<T>> nodes = new ArrayList<>(values.size());
+    for (T value : values) {
+      nodes.add(new Node<>(value, pointOf.apply(value), 0));
+    }
+    return new KdTree<>(split(nodes, 0), nodes.size());
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** @return the (at most) k values closest to the target, closest first */
+  public List<T> nearest(double[] target, int k) {
+    if (k <= 0 || root == null) {
+      return List.of();
+    }
+    // the worst of the best k so far is at the head
+    PriorityQueue<Candidate<T>> best = new PriorityQueue<>(k + 1,
+        Comparator.comparingDouble((Candidate<T> c) -> c.distanceSquared).reversed());
+    search(root, target, k, best);
+
+    List<T> result = new ArrayList<>(best.size());
+    while (!best.isEmpty()) {
+      result.add(best.poll().value);
+    }
+    Collections.reverse(result);
+    return result;
+  }
+
+  // median split on alternating axes, so the tree is balanced
+  private static <T> Node<T> split(List<Node<T>> nodes, int depth) {
+    if (nodes.isEmpty()) {
+      return null;
+    }
+    int axis = depth % nodes.get(0).point.length;
+    nodes.sort(Comparator.comparingDouble(node -> node.point[axis]));
+    int median = nodes.size() / 2;
+    Node<T> node = new Node<>(nodes.get(median).value, nodes.get(median).point, axis);
+    node.left = split(new ArrayList<>(nodes.subList(0, median)), depth + 1);
+    node.right = split(new ArrayList<>(nodes.subList(median + 1, nodes.size())), depth + 1);
+    return node;
+  }
+
+  private static <T> void search(Node<T> node, double[] target, int k, PriorityQueue<Candidate<T>> best) {
+    if (node == null) {
+      return;
+    }
+    double distanceSquared = 0;
+    for (int i = 0; i < target.length; i++) {
+      double d = target[i] - node.point[i];
+      distanceSquared += d * d;
+    }
+    if (best.size() < k) {
+      best.add(new Candidate<>(node.value, distanceSquared));
+    } else if (distanceSquared < best.peek().distanceSquared) {
+      best.poll();
+      best.add(new Candidate<>(node.value, distanceSquared));
+    }
+
+    double offset = target[node.axis] - node.point[node.axis];
+    Node<T> near = offset < 0 ? node.left : node.right;
+    Node<T> far = offset < 0 ? node.right : node.left;
+    search(near, target, k, best);
+    // the far side can only hold something closer if the splitting plane is
+    if (best.size() < k || offset * offset < best.peek().distanceSquared) {
+      search(far, target, k, best);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Runs the <code>/list</code> queries of the CRUD controllers: up to a given
+ * number of rows matching a {@link Specification}, in the order of a
+ * {@link Sort}, with either whole entities or only the requested fields
+ * selected. Filtering, sorting, projection and the limit all happen in the
+ * database.
+ *
+ * Sort keys and fields are checked against the names each controller allows,
+ * and anything else is rejected with 400, so clients cannot reach columns or
+ * associations the endpoint does not expose.
+ */
+
+@Service("listQuery")
+public class ListQueryService {
+  @Autowired
+  private EntityManager entityManager;
+
+  /** Filter on one attribute; null (no filter) when the value was not given. */
+  public static <T> Specification<T> fieldEquals(String attribute, Object value) {
+    return value == null ? null : (root, query, cb) -> cb.equal(root.get(attribute), value);
+  }
+
+  /**
+   * @param allowedFields what the endpoint may filter, sort and project on
+   *                      (the LIST_FIELDS of each controller)
+   * @param limit         the most rows to return; controllers cap it at
+   *                      ApiController.MAX_PAGE_SIZE
+   * @return the matching entities when <code>fields</code> is null or empty,
+   *         otherwise one map per row from field name to value, in the order
+   *         the fields were given
+   */
+  public <T> List<?> list(Class<T> entityType, Specification<T> filter, Sort sort, List<String> fields,
+      Set<String> allowedFields, int limit) {
+    checkFields("sort", sort.stream().map(Sort.Order::getProperty).toList(), allowedFields);
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+    if (fields == null || fields.isEmpty()) {
+      CriteriaQuery<T> query = cb.createQuery(entityType);
+      Root<T> root = query.from(entityType);
+      restrict(query, root, cb, filter, sort);
+      return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    List<String> selected = fields.stream().distinct().toList();
+    checkFields("fields", selected, allowedFields);
+    CriteriaQuery<Tuple> query = cb.createTupleQuery();
+    Root<T> root = query.from(entityType);
+    query.multiselect(selected.stream().<Selection<?>>map(field -> root.get(field).alias(field)).toList());
+    restrict(query, root, cb, filter, sort);
+    return entityManager.createQuery(query).setMaxResults(limit).getResultList().stream()
+        .map(tuple -> {
+          Map<String, Object> row = new LinkedHashMap<>();
+          selected.forEach(field -> row.put(field, tuple.get(field)));
+          return row;
+        })
+        .toList();
+  }
+
+  private static <T> void restrict(CriteriaQuery<?> query, Root<T> root, CriteriaBuilder cb, Specification<T> filter,
+      Sort sort) {
+    Predicate predicate = filter == null ? null : filter.toPredicate(root, query, cb);
+    if (predicate != null) {
+      query.where(predicate);
+    }
+    query.orderBy(QueryUtils.toOrders(sort, root, cb));
+  }
+
+  private static void checkFields(String parameter, List<String> names, Set<String> allowedFields) {
+    for (String name : names) {
+      if (!allowedFields.contains(name)) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+            "%s: unknown field %s (expected one of %s)".formatted(parameter, name, allowedFields));
+      }
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The distinct values of one column, kept sorted so that the values starting
+ * with a prefix can be listed without touching the database. Lookups are a
+ * walk of a {@link ConcurrentSkipListMap} from the prefix and take no lock;
+ * writes are rare and synchronized.
+ *
+ * Matching ignores case, and values that differ only in case are suggested
+ * once, spelled as they were first seen. At most <code>maxValues</code>
+ * distinct values are held; once full, new values are not suggested until a
+ * rebuild (existing ones still are).
+ *
+ * So that updates and deletes can tell which value they release, the value of
+ * each row is remembered by id, for at most <code>maxRows</code> rows. A value
+ * taken by a row past that cap is pinned: nothing can release it, so it stays
+ * suggested until a rebuild even if no row has it any more. That keeps memory
+ * bounded by the two caps rather than by the size of the table.
+ */
+
+public class PrefixIndex {
+  private final int maxValues;
+
+  private final int maxRows;
+
+  // lower-cased value -> the value as first seen, and how many rows have it
+  private final ConcurrentSkipListMap<String, Entry> values = new ConcurrentSkipListMap<>();
+
+  // row id -> lower-cased value of that row, for at most maxRows rows
+  private final Map<Long, String> keyById = new HashMap<>();
+
+  private static final class Entry {
+    private final String value;
+    private int rows;
+    // also held by rows that aren't in keyById
+    private boolean pinned;
+
+    private Entry(String value) {
+      this.value = value;
+    }
+  }
+
+  public PrefixIndex(int maxValues, int maxRows) {
+    this.maxValues = maxValues;
+    this.maxRows = maxRows;
+  }
+
+  /** Records the row's current value, releasing the one it had before. */
+  public synchronized void put(long id, String value) {
+    release(id);
+    if (value == null || value.isBlank()) {
+      return;
+    }
+    String trimmed = value.trim();
+    String key = key(trimmed);
+    Entry entry = values.get(key);
+    if (entry == null) {
+      if (values.size() >= maxValues) {
+        return;
+      }
+      entry = new Entry(trimmed);
+      values.put(key, entry);
+    }
+    if (keyById.size() < maxRows) {
+      entry.rows++;
+      keyById.put(id, key);
+    } else {
+      entry.pinned = true;
+    }
+  }
+
+  public synchronized void remove(long id) {
+    release(id);
+  }
+
+  public synchronized void clear() {
+    values.clear();
+    keyById.clear();
+  }
+
+  public int size() {
+    return values.size();
+  }
+
+  /** @return up to <code>limit</code> values starting with the prefix, in alphabetical order */
+  public List<String> complete(String prefix, int limit) {
+    String from = key(prefix == null ? "" : prefix.trim());
+    return values.subMap(from, true, from + Character.MAX_VALUE, false).values().stream()
+        .limit(limit)
+        .map(entry -> entry.value)
+        .toList();
+  }
+
+  private static String key(String value) {
+    return value.toLowerCase(Locale.ROOT);
+  }
+
+  private void release(long id) {
+    String key = keyById.remove(id);
+    if (key == null) {
+      return;
+    }
+    Entry entry = values.get(key);
+    if (--entry.rows == 0 && !entry.pinned) {
+      values.remove(key);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package edu.ucsb.cs156.example.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Keeps the serialized JSON (and, for larger bodies, a gzipped copy) of
+ * read-mostly responses, so that repeated reads skip the query, Jackson and
+ * compression altogether.
+ *
+ * Keys are <code>&lt;table&gt;/&lt;name&gt;</code>, e.g.
+ * <code>ucsbdiningcommons/all</code>. Entries never expire; a
+ * {@link TableWrite} drops every entry of its table.
+ */
+
+@Service
+public class SerializedResponseCache {
+  /** Bodies smaller than this are sent as is; gzip would barely shrink them. */
+  static final int GZIP_MIN_SIZE = 1024;
+
+  @Autowired
+  ObjectMapper mapper;
+
+  // table -> key -> entry
+  private final ConcurrentHashMap<String, ConcurrentHashMap<String, Entry>> tables = new ConcurrentHashMap<>();
+
+  @Getter
+  @AllArgsConstructor(access = AccessLevel.PRIVATE)
+  public static class Entry {
+    private final byte[] json;
+    /** null when the body is under {@link SerializedResponseCache#GZIP_MIN_SIZE} */
+    private final byte[] gzip;
+
+    public static Entry of(byte[] json) {
+      return new Entry(json, json.length < GZIP_MIN_SIZE ? null : gzip(json));
+    }
+  }
+
+  /**
+   * Cached bytes for <code>key</code>, serializing what <code>body</code>
+   * returns on a miss. A write replaces the table's map rather than clearing
+   * it, so a load that was already running stores its possibly stale result
+   * where no later read will find it.
+   */
+  public Entry get(String key, Supplier<?> body) {
+    return tables.computeIfAbsent(key.split("/", 2)[0], table -> new ConcurrentHashMap<>())
+        .computeIfAbsent(key, k -> Entry.of(serialize(body.get())));
+  }
+
+  @Order(TableChangeTracker.LISTENER_ORDER - 1)
+  @TransactionalEventListener(fallbackExecution = true)
+  public void tableWritten(TableWrite write) {
+    tables.remove(write.getTable());
+  }
+
+  /** Whether an <code>Accept-Encoding</code> header allows a gzipped body. */
+  public static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split("\\s*;\\s*");
+      if (parts[0].equalsIgnoreCase("gzip")) {
+        return !(parts.length > 1 && parts[1].matches("q=0(\\.0*)?"));
+      }
+    }
+    return false;
+  }
+
+  private byte[] serialize(Object body) {
+    try {
+      return mapper.writeValueAsBytes(body);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("could not serialize response", e);
+    }
+  }
+
+  private static byte[] gzip(byte[] bytes) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+}
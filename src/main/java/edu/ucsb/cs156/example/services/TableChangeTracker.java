@@ -0,0 +1,59 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Counts writes per table so that list endpoints can answer a conditional GET
+ * (<code>If-None-Match</code>) without running their query.
+ *
+ * Every {@link TableWrite} the controllers publish bumps the table's counter.
+ * The counters live in memory and start over on each boot, which is why the
+ * tags also carry the boot time.
+ *
+ * This assumes the app runs as a single instance (one Dokku container) and
+ * that every write to these tables goes through it. Writes this process does
+ * not see, made by another instance or directly in SQL, leave the tag
+ * unchanged, and clients holding it keep getting 304 Not Modified for stale
+ * rows until the next write here or the next restart. Running more than one
+ * instance needs a tag taken from the database instead, e.g. from
+ * max(version) and count(*) of the table.
+ */
+
+@Service
+public class TableChangeTracker {
+  /** After every other {@link TableWrite} listener has dropped its copy of the table. */
+  public static final int LISTENER_ORDER = Ordered.LOWEST_PRECEDENCE;
+
+  private final long bootEpoch = System.currentTimeMillis();
+
+  private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+  @Order(LISTENER_ORDER)
+  @TransactionalEventListener(fallbackExecution = true)
+  public void tableWritten(TableWrite write) {
+    changed(write.getTable());
+  }
+
+  public void changed(String table) {
+    counter(table).incrementAndGet();
+  }
+
+  /**
+   * Weak ETag for the current contents of a table. Take it before reading the
+   * rows: a write that lands in between then only makes the tag stale, so the
+   * client refetches next time instead of keeping old rows under a new tag.
+   */
+  public String listTag(String table) {
+    return "W/\"%s-%d-%d\"".formatted(table, bootEpoch, counter(table).get());
+  }
+
+  private AtomicLong counter(String table) {
+    return counters.computeIfAbsent(table, t -> new AtomicLong());
+  }
+}
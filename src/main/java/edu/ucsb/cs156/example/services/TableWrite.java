@@ -0,0 +1,64 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.List;
+
+import org.springframework.data.util.Streamable;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A write to one table, published by the controllers once the rows are saved
+ * or deleted.
+ *
+ * Everything that keeps a copy of a table in memory subscribes to it:
+ * {@link TableChangeTracker}, {@link SerializedResponseCache},
+ * {@link DiningCommonsLocator}, {@link AutocompleteService} and
+ * {@link TextSearchService}. The listeners are
+ * <code>@TransactionalEventListener</code>s, so inside a transaction they run
+ * after it commits, and otherwise straight away. The tracker runs last
+ * ({@link TableChangeTracker#LISTENER_ORDER}), so that a client never gets
+ * old data under a new tag.
+ *
+ * Only writes made through this process are seen. Writes made by another
+ * instance or directly in SQL leave every copy stale until the next restart;
+ * see {@link TableChangeTracker} for what running more than one instance
+ * would need.
+ */
+
+@Getter
+@EqualsAndHashCode
+@ToString
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class TableWrite {
+  private final String table;
+
+  /** rows inserted or updated, as they now are in the table */
+  private final List<?> saved;
+
+  /** ids of the rows deleted */
+  private final List<?> deletedIds;
+
+  public static TableWrite saved(String table, Iterable<?> rows) {
+    return new TableWrite(table, Streamable.of(rows).toList(), List.of());
+  }
+
+  public static TableWrite deleted(String table, Object id) {
+    return new TableWrite(table, List.of(), List.of(id));
+  }
+
+  public boolean isTo(String table) {
+    return this.table.equals(table);
+  }
+
+  public <T> List<T> getSaved(Class<T> type) {
+    return saved.stream().map(type::cast).toList();
+  }
+
+  public <K> List<K> getDeletedIds(Class<K> type) {
+    return deletedIds.stream().map(type::cast).toList();
+  }
+}
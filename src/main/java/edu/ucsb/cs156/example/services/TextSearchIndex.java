@@ -0,0 +1,149 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process inverted index from words to row ids, used for full-text search
+ * when the database has none (H2). A row matches when it contains every word
+ * of the query; matches are ranked by tf-idf, then by id.
+ *
+ * Words are lower-cased runs of letters and digits. There is no stemming, so
+ * "dogs" does not find "dog" here, although it does on PostgreSQL.
+ */
+
+public class TextSearchIndex {
+  // word -> (id -> number of times the word occurs in that row)
+  private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+
+  // id -> the words it was indexed under, so that a row can be taken out again
+  private final Map<Long, Map<String, Integer>> rows = new HashMap<>();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** Indexes a row under its current text, replacing whatever it had before. */
+  public void put(long id, String text) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (String word : words(text)) {
+      counts.merge(word, 1, Integer::sum);
+    }
+
+    lock.writeLock().lock();
+    try {
+      unindex(id);
+      rows.put(id, counts);
+      counts.forEach((word, count) -> postings.computeIfAbsent(word, w -> new HashMap<>()).put(id, count));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(long id) {
+    lock.writeLock().lock();
+    try {
+      unindex(id);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      postings.clear();
+      rows.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return rows.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return ids of the rows containing every word of the query, best match
+   *         first, skipping <code>offset</code> of them and returning at most
+   *         <code>limit</code>
+   */
+  public List<Long> search(String query, long offset, int limit) {
+    List<String> terms = words(query).stream().distinct().toList();
+    if (terms.isEmpty()) {
+      return List.of();
+    }
+
+    lock.readLock().lock();
+    try {
+      List<Map<Long, Integer>> lists = new ArrayList<>();
+      for (String term : terms) {
+        Map<Long, Integer> list = postings.get(term);
+        if (list == null) {
+          return List.of();
+        }
+        lists.add(list);
+      }
+      // walk the rarest word's rows and probe the others
+      lists.sort(Comparator.comparingInt(Map::size));
+
+      Map<Long, Double> scores = new HashMap<>();
+      double total = rows.size();
+      candidates:
+      for (Map.Entry<Long, Integer> candidate : lists.get(0).entrySet()) {
+        long id = candidate.getKey();
+        double score = 0;
+        for (Map<Long, Integer> list : lists) {
+          Integer count = list.get(id);
+          if (count == null) {
+            continue candidates;
+          }
+          score += count * Math.log(1 + total / list.size());
+        }
+        scores.put(id, score);
+      }
+
+      return scores.entrySet().stream()
+          .sorted(Map.Entry.<Long, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+          .skip(offset)
+          .limit(limit)
+          .map(Map.Entry::getKey)
+          .toList();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  static List<String> words(String text) {
+    if (text == null) {
+      return List.of();
+    }
+    return Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+        .filter(word -> !word.isEmpty())
+        .toList();
+  }
+
+  private void unindex(long id) {
+    Map<String, Integer> previous = rows.remove(id);
+    if (previous == null) {
+      return;
+    }
+    for (String word : previous.keySet()) {
+      Map<Long, Integer> list = postings.get(word);
+      list.remove(id);
+      if (list.isEmpty()) {
+        postings.remove(word);
+      }
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+import edu.ucsb.cs156.example.repositories.DatabaseVendor;
+import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ranked full-text search over book titles and authors, and restaurant names
+ * and descriptions.
+ *
+ * On PostgreSQL the search runs in the database, against the GIN indexes on
+ * <code>to_tsvector(...)</code> created by V11. H2 has no equivalent, so there
+ * each table is mirrored into a {@link TextSearchIndex} when the application
+ * starts, and kept current from {@link TableWrite} events (which are ignored
+ * on PostgreSQL).
+ */
+
+@Slf4j
+@Service("textSearch")
+public class TextSearchService {
+  @Autowired
+  private DatabaseVendor databaseVendor;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private EntityStreamingService entityStreamingService;
+
+  private final TextSearchIndex books = new TextSearchIndex();
+
+  private final TextSearchIndex restaurants = new TextSearchIndex();
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void buildIndexes() {
+    if (databaseVendor.isPostgres()) {
+      return;
+    }
+    books.clear();
+    entityStreamingService.forEachRow(bookRepository::streamAll, book -> books.put(book.getId(), text(book)));
+    restaurants.clear();
+    entityStreamingService.forEachRow(restaurantRepository::streamAll,
+        restaurant -> restaurants.put(restaurant.getId(), text(restaurant)));
+    log.info("Indexed {} books and {} restaurants for text search", books.size(), restaurants.size());
+  }
+
+  public List<Book> searchBooks(String query, Pageable page) {
+    if (databaseVendor.isPostgres()) {
+      return bookRepository.searchText(query, page);
+    }
+    return fetch(bookRepository, books.search(query, page.getOffset(), page.getPageSize()), Book::getId);
+  }
+
+  public List<Restaurant> searchRestaurants(String query, Pageable page) {
+    if (databaseVendor.isPostgres()) {
+      return restaurantRepository.searchText(query, page);
+    }
+    return fetch(restaurantRepository, restaurants.search(query, page.getOffset(), page.getPageSize()),
+        Restaurant::getId);
+  }
+
+  @Order(TableChangeTracker.LISTENER_ORDER - 1)
+  @TransactionalEventListener(fallbackExecution = true)
+  public void tableWritten(TableWrite write) {
+    if (databaseVendor.isPostgres()) {
+      return;
+    }
+    if (write.isTo("book")) {
+      write.getSaved(Book.class).forEach(book -> books.put(book.getId(), text(book)));
+      write.getDeletedIds(Long.class).forEach(books::remove);
+    } else if (write.isTo("restaurant")) {
+      write.getSaved(Restaurant.class).forEach(restaurant -> restaurants.put(restaurant.getId(), text(restaurant)));
+      write.getDeletedIds(Long.class).forEach(restaurants::remove);
+    }
+  }
+
+  // the same columns as the tsvector expressions in V11
+  static String text(Book book) {
+    return join(book.getTitle(), book.getAuthor());
+  }
+
+  static String text(Restaurant restaurant) {
+    return join(restaurant.getName(), restaurant.getDescription());
+  }
+
+  private static String join(String... parts) {
+    return Stream.of(parts).filter(Objects::nonNull).collect(Collectors.joining(" "));
+  }
+
+  // loads one page of hits, keeping the order the index ranked them in
+  private static <T> List<T> fetch(CrudRepository<T, Long> repository, List<Long> ids, Function<T, Long> id) {
+    Map<Long, T> byId = new HashMap<>();
+    repository.findAllById(ids).forEach(row -> byId.put(id.apply(row), row));
+    return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+  }
+}
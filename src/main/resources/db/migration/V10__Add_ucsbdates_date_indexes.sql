@@ -0,0 +1,3 @@
+-- /api/ucsbdates/quarter and /api/ucsbdates/range; both return rows in date order
+CREATE INDEX IF NOT EXISTS ucsbdates_quarter_date_idx ON ucsbdates (quarteryyyyq, local_date_time);
+CREATE INDEX IF NOT EXISTS ucsbdates_date_idx ON ucsbdates (local_date_time);
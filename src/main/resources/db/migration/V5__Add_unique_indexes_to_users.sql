@@ -0,0 +1,6 @@
+-- keep one row per email (the oldest), carrying over the admin flag, before making email unique
+UPDATE users SET admin = TRUE WHERE email IN (SELECT email FROM users WHERE admin = TRUE);
+DELETE FROM users WHERE id NOT IN (SELECT MIN(id) FROM users GROUP BY email);
+
+CREATE UNIQUE INDEX IF NOT EXISTS users_email_idx ON users (email);
+CREATE UNIQUE INDEX IF NOT EXISTS users_google_sub_idx ON users (google_sub);
@@ -0,0 +1,7 @@
+-- @Version columns for optimistic locking and ETags; existing rows start at version 0.
+-- The entities' @ColumnDefault("0") gives the same default when ddl-auto adds the column first.
+ALTER TABLE dog ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE book ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE restaurant ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE ucsbdates ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE ucsbdiningcommons ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,2 @@
+-- @Version column for users (see V8 for the other tables); existing rows start at version 0
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,58 @@
+package edu.ucsb.cs156.example.config;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.test.context.support.WithMockUser;
+
+import edu.ucsb.cs156.example.ControllerTestCase;
+import edu.ucsb.cs156.example.controllers.SystemInfoController;
+import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.services.SystemInfoService;
+
+// The actuator endpoints are not part of a @WebMvcTest, so a request that
+// gets past the security rules ends in 404 rather than 200.
+@WebMvcTest(controllers = SystemInfoController.class)
+public class ActuatorSecurityTests extends ControllerTestCase {
+
+  @MockBean
+  UserRepository userRepository;
+
+  @MockBean
+  SystemInfoService systemInfoService;
+
+  @Test
+  public void logged_out_users_cannot_read_actuator_endpoints() throws Exception {
+    mockMvc.perform(get("/actuator/metrics"))
+        .andExpect(status().is(403));
+    mockMvc.perform(get("/actuator/mappings"))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = { "USER" })
+  @Test
+  public void regular_users_cannot_read_actuator_endpoints() throws Exception {
+    mockMvc.perform(get("/actuator/metrics"))
+        .andExpect(status().is(403));
+    mockMvc.perform(get("/actuator/mappings"))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = { "ADMIN", "USER" })
+  @Test
+  public void admins_get_past_the_security_rules_for_actuator_endpoints() throws Exception {
+    mockMvc.perform(get("/actuator/metrics"))
+        .andExpect(status().isNotFound());
+    mockMvc.perform(get("/actuator/mappings"))
+        .andExpect(status().isNotFound());
+  }
+
+  @Test
+  public void logged_out_users_cannot_scrape_prometheus() throws Exception {
+    mockMvc.perform(get("/actuator/prometheus"))
+        .andExpect(status().is(403));
+  }
+}
@@ -0,0 +1,87 @@
+package edu.ucsb.cs156.example.config;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.repositories.UserRepository;
+
+public class SecurityConfigTests {
+  private final AtomicLong nanos = new AtomicLong();
+  private final UserRepository userRepository = mock(UserRepository.class);
+  private SecurityConfig securityConfig;
+
+  @BeforeEach
+  public void setUp() {
+    securityConfig = new SecurityConfig();
+    securityConfig.userRepository = userRepository;
+    securityConfig.ticker = nanos::get;
+    ReflectionTestUtils.setField(securityConfig, "adminEmails", Set.of("phtcon@ucsb.edu"));
+    ReflectionTestUtils.setField(securityConfig, "adminCacheMaximumSize", 100L);
+    ReflectionTestUtils.setField(securityConfig, "adminCacheTtlSeconds", 300L);
+    securityConfig.buildAdminCache();
+  }
+
+  private static Optional<User> user(String email, boolean admin) {
+    return Optional.of(User.builder().id(1L).email(email).admin(admin).build());
+  }
+
+  @Test
+  public void emails_in_app_admin_emails_are_admins_without_a_lookup() {
+    assertTrue(securityConfig.getAdmin("phtcon@ucsb.edu"));
+    verify(userRepository, never()).findByEmail("phtcon@ucsb.edu");
+  }
+
+  @Test
+  public void admin_flag_is_read_from_the_users_table() {
+    when(userRepository.findByEmail("cgaucho@ucsb.edu")).thenReturn(user("cgaucho@ucsb.edu", true));
+    when(userRepository.findByEmail("ldelplaya@ucsb.edu")).thenReturn(user("ldelplaya@ucsb.edu", false));
+
+    assertTrue(securityConfig.getAdmin("cgaucho@ucsb.edu"));
+    assertFalse(securityConfig.getAdmin("ldelplaya@ucsb.edu"));
+  }
+
+  @Test
+  public void unknown_users_are_not_admins() {
+    when(userRepository.findByEmail("new@ucsb.edu")).thenReturn(Optional.empty());
+
+    assertFalse(securityConfig.getAdmin("new@ucsb.edu"));
+  }
+
+  @Test
+  public void repeated_logins_are_served_from_the_cache() {
+    when(userRepository.findByEmail("cgaucho@ucsb.edu")).thenReturn(user("cgaucho@ucsb.edu", false));
+
+    securityConfig.getAdmin("cgaucho@ucsb.edu");
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(299));
+    assertFalse(securityConfig.getAdmin("cgaucho@ucsb.edu"));
+
+    verify(userRepository, times(1)).findByEmail("cgaucho@ucsb.edu");
+  }
+
+  @Test
+  public void admin_flags_set_in_the_database_apply_after_the_ttl() {
+    when(userRepository.findByEmail("cgaucho@ucsb.edu"))
+        .thenReturn(user("cgaucho@ucsb.edu", false), user("cgaucho@ucsb.edu", true));
+
+    assertFalse(securityConfig.getAdmin("cgaucho@ucsb.edu"));
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(301));
+    assertTrue(securityConfig.getAdmin("cgaucho@ucsb.edu"));
+
+    verify(userRepository, times(2)).findByEmail("cgaucho@ucsb.edu");
+  }
+}
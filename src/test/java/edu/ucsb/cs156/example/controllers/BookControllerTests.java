@@ -5,6 +5,13 @@ import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.Book;
 import edu.ucsb.cs156.example.repositories.BookRepository;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.services.AutocompleteService;
+import edu.ucsb.cs156.example.services.EntityStreamingService;
+import edu.ucsb.cs156.example.services.TableChangeTracker;
+import edu.ucsb.cs156.example.services.TableWrite;
+import edu.ucsb.cs156.example.services.ListQueryService;
+import edu.ucsb.cs156.example.services.TextSearchService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,7 +22,15 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -24,6 +39,11 @@ import static org.springframework.security.test.web.servlet.request.SecurityMock
 //import java.time.LocalDateTime;
 
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.List;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -31,17 +51,38 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
 
 @WebMvcTest(controllers = BookController.class)
 @Import(TestConfig.class)
+@RecordApplicationEvents
 public class BookControllerTests extends ControllerTestCase {
 
         @MockBean
         BookRepository bookRepository;
 
+        @MockBean
+        EntityStreamingService entityStreamingService;
+
+        @MockBean
+        ListQueryService listQueryService;
+
+        @MockBean
+        TextSearchService textSearchService;
+
+        @MockBean
+        AutocompleteService autocompleteService;
+
         @MockBean
         UserRepository userRepository;
 
+        @Autowired
+        TableChangeTracker tableChangeTracker;
+
+        @Autowired
+        ApplicationEvents applicationEvents;
+
         // Authorization tests for /api/ucsbdates/admin/all
 
         @Test
@@ -190,6 +231,7 @@ public class BookControllerTests extends ControllerTestCase {
 
                 // assert
                 verify(bookRepository, times(1)).save(book1);
+                assertEquals(List.of(TableWrite.saved("book", List.of(book1))), applicationEvents.stream(TableWrite.class).toList());
                 String expectedJson = mapper.writeValueAsString(book1);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(expectedJson, responseString);
@@ -202,14 +244,9 @@ public class BookControllerTests extends ControllerTestCase {
 
                 //LocalDateTime ldt1 = LocalDateTime.parse("2022-01-03T00:00:00");
 
-                Book book1 = Book.builder()
-                                .title("1984")
-                                .author("George Orwell")
-                                .year("1949")
-                                .build();
 
 
-                when(bookRepository.findById(eq(15L))).thenReturn(Optional.of(book1));
+                when(bookRepository.deleteRowById(eq(15L))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -218,8 +255,9 @@ public class BookControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(bookRepository, times(1)).findById(15L);
-                verify(bookRepository, times(1)).delete(any());
+                verify(bookRepository, times(1)).deleteRowById(15L);
+
+                assertEquals(List.of(TableWrite.deleted("book", 15L)), applicationEvents.stream(TableWrite.class).toList());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Book with id 15 deleted", json.get("message"));
@@ -231,7 +269,7 @@ public class BookControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(bookRepository.findById(eq(15L))).thenReturn(Optional.empty());
+                when(bookRepository.deleteRowById(eq(15L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -240,7 +278,7 @@ public class BookControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(bookRepository, times(1)).findById(15L);
+                verify(bookRepository, times(1)).deleteRowById(15L);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Book with id 15 not found", json.get("message"));
         }
@@ -253,13 +291,9 @@ public class BookControllerTests extends ControllerTestCase {
                 //LocalDateTime ldt1 = LocalDateTime.parse("2022-01-03T00:00:00");
                 //LocalDateTime ldt2 = LocalDateTime.parse("2023-01-03T00:00:00");
 
-                Book bookOrig = Book.builder()
-                                .title("1984")
-                                .author("George Orwell")
-                                .year("1949")
-                                .build();
 
                 Book bookEdited = Book.builder()
+                                .id(67)
                                 .title("1984")
                                 .author("George Orwell")
                                 .year("1984")
@@ -267,7 +301,7 @@ public class BookControllerTests extends ControllerTestCase {
 
                 String requestBody = mapper.writeValueAsString(bookEdited);
 
-                when(bookRepository.findById(eq(67L))).thenReturn(Optional.of(bookOrig));
+                when(bookRepository.updateRowReturningVersion(eq(67L), eq(bookEdited))).thenReturn(Optional.of(4L));
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -276,13 +310,15 @@ public class BookControllerTests extends ControllerTestCase {
                                                 .characterEncoding("utf-8")
                                                 .content(requestBody)
                                                 .with(csrf()))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"67-4\"")).andReturn();
 
                 // assert
-                verify(bookRepository, times(1)).findById(67L);
-                verify(bookRepository, times(1)).save(bookEdited); // should be saved with correct user
+                bookEdited.setVersion(4L); // the version the update returned
+                verify(bookRepository, times(1)).updateRowReturningVersion(67L, bookEdited); // should be updated in place
+                assertEquals(List.of(TableWrite.saved("book", List.of(bookEdited))), applicationEvents.stream(TableWrite.class).toList());
                 String responseString = response.getResponse().getContentAsString();
-                assertEquals(requestBody, responseString);
+                assertEquals(mapper.writeValueAsString(bookEdited), responseString);
         }
 
         @WithMockUser(roles = { "ADMIN", "USER" })
@@ -300,7 +336,7 @@ public class BookControllerTests extends ControllerTestCase {
 
                 String requestBody = mapper.writeValueAsString(bookEdited);
 
-                when(bookRepository.findById(eq(67L))).thenReturn(Optional.empty());
+                when(bookRepository.updateRowReturningVersion(eq(67L), eq(bookEdited))).thenReturn(Optional.empty());
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -312,9 +348,362 @@ public class BookControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(bookRepository, times(1)).findById(67L);
+                verify(bookRepository, times(1)).updateRowReturningVersion(67L, bookEdited);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Book with id 67 not found", json.get("message"));
 
         }
-}
\ No newline at end of file
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_a_page_of_books_with_a_next_cursor() throws Exception {
+
+                // arrange
+
+                Book first = Book.builder().id(4).title("1984").author("George Orwell").year("1949").build();
+                Book second = Book.builder().id(7).title("Dune").author("Frank Herbert").year("1965").build();
+                Book third = Book.builder().id(9).title("Emma").author("Jane Austen").year("1815").build();
+
+                when(bookRepository.findByIdGreaterThanOrderByIdAsc(eq(3L), eq(PageRequest.of(0, 3))))
+                                .thenReturn(new ArrayList<>(Arrays.asList(first, second, third)));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/books/page?after=3&limit=2"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bookRepository, times(1)).findByIdGreaterThanOrderByIdAsc(eq(3L), eq(PageRequest.of(0, 3)));
+                String expectedJson = mapper.writeValueAsString(new KeysetPage<>(Arrays.asList(first, second), 7L));
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_no_next_cursor_on_the_last_page_of_books() throws Exception {
+
+                // arrange
+
+                Book first = Book.builder().id(4).title("1984").author("George Orwell").year("1949").build();
+                Book second = Book.builder().id(7).title("Dune").author("Frank Herbert").year("1965").build();
+
+                when(bookRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), eq(PageRequest.of(0, 101))))
+                                .thenReturn(new ArrayList<>(Arrays.asList(first, second)));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/books/page"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bookRepository, times(1)).findByIdGreaterThanOrderByIdAsc(eq(0L), eq(PageRequest.of(0, 101)));
+                String expectedJson = mapper.writeValueAsString(new KeysetPage<Book, Long>(Arrays.asList(first, second), null));
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @Test
+        public void logged_out_users_cannot_stream_all() throws Exception {
+                mockMvc.perform(get("/api/books/all/stream"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_stream_all_books() throws Exception {
+
+                // arrange
+
+                when(entityStreamingService.ndjson(any())).thenReturn(ResponseEntity.ok().build());
+
+                // act
+                mockMvc.perform(get("/api/books/all/stream"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                ArgumentCaptor<Supplier> rows = ArgumentCaptor.forClass(Supplier.class);
+                verify(entityStreamingService, times(1)).ndjson(rows.capture());
+                rows.getValue().get();
+                verify(bookRepository, times(1)).streamAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/books/bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[]")
+                                .with(csrf()))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_post_books_and_supplied_ids_are_ignored() throws Exception {
+                // arrange
+
+                Book first = Book.builder()
+                                .id(17)
+                                .title("1984")
+                                .author("George Orwell")
+                                .year("1949")
+                                .build();
+
+                Book second = Book.builder()
+                                .title("Dune")
+                                .author("Frank Herbert")
+                                .year("1965")
+                                .build();
+
+                Book firstSaved = Book.builder()
+                                .id(51)
+                                .title("1984")
+                                .author("George Orwell")
+                                .year("1949")
+                                .build();
+
+                Book secondSaved = Book.builder()
+                                .id(52)
+                                .title("Dune")
+                                .author("Frank Herbert")
+                                .year("1965")
+                                .build();
+
+                String requestBody = mapper.writeValueAsString(Arrays.asList(first, second));
+                first.setId(0);
+                when(bookRepository.saveAll(eq(Arrays.asList(first, second))))
+                                .thenReturn(Arrays.asList(firstSaved, secondSaved));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                post("/api/books/bulk")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .characterEncoding("utf-8")
+                                                .content(requestBody)
+                                                .with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+                verify(bookRepository, times(1)).saveAll(Arrays.asList(first, second));
+                assertEquals(List.of(TableWrite.saved("book", Arrays.asList(firstSaved, secondSaved))), applicationEvents.stream(TableWrite.class).toList());
+                String expectedJson = mapper.writeValueAsString(Arrays.asList(firstSaved, secondSaved));
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_304_for_all_books_when_the_table_is_unchanged() throws Exception {
+
+                // arrange
+
+                String etag = tableChangeTracker.listTag("book");
+
+                // act
+                mockMvc.perform(get("/api/books/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+
+                // assert
+
+                verify(bookRepository, times(0)).findAll();
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_edit_a_book_with_if_match_and_gets_the_new_etag() throws Exception {
+                // arrange
+
+                Book edited = Book.builder()
+                                .id(67)
+                                .title("1984")
+                                .author("George Orwell")
+                                .year("1949")
+                                .build();
+
+                String requestBody = mapper.writeValueAsString(edited);
+
+                when(bookRepository.updateRowByIdAndVersion(eq(67L), eq(3L), eq(edited))).thenReturn(1);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/books?id=67")
+                                                .header("If-Match", "\"67-3\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .characterEncoding("utf-8")
+                                                .content(requestBody)
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"67-4\"")).andReturn();
+
+                // assert
+                edited.setVersion(4L); // the request was made with the version from If-Match
+                verify(bookRepository, times(1)).updateRowByIdAndVersion(67L, 3L, edited);
+                assertEquals(mapper.writeValueAsString(edited), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_gets_412_editing_a_book_that_changed_since_it_was_read() throws Exception {
+                // arrange
+
+                Book edited = Book.builder()
+                                .id(67)
+                                .title("1984")
+                                .author("George Orwell")
+                                .year("1949")
+                                .build();
+
+                String requestBody = mapper.writeValueAsString(edited);
+
+                when(bookRepository.updateRowByIdAndVersion(eq(67L), eq(3L), eq(edited))).thenReturn(0);
+                when(bookRepository.findVersionById(eq(67L))).thenReturn(Optional.of(4L));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/books?id=67")
+                                                .header("If-Match", "\"67-3\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .characterEncoding("utf-8")
+                                                .content(requestBody)
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Book with id 67 has been modified since it was read", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_gets_409_editing_a_stale_version_of_a_book() throws Exception {
+                // arrange
+
+                Book edited = Book.builder()
+                                .id(67)
+                                .version(5L)
+                                .title("1984")
+                                .author("George Orwell")
+                                .year("1949")
+                                .build();
+
+                String requestBody = mapper.writeValueAsString(edited);
+
+                when(bookRepository.updateRowByIdAndVersion(eq(67L), eq(5L), eq(edited))).thenReturn(0);
+                when(bookRepository.findVersionById(eq(67L))).thenReturn(Optional.of(6L));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/books?id=67")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .characterEncoding("utf-8")
+                                                .content(requestBody)
+                                                .with(csrf()))
+                                .andExpect(status().isConflict()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("ObjectOptimisticLockingFailureException", json.get("type"));
+        }
+
+        @Test
+        public void logged_out_users_cannot_list_books() throws Exception {
+                mockMvc.perform(get("/api/books/list"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_list_books_filtered_sorted_and_projected() throws Exception {
+
+                // arrange
+
+                List<Map<String, Object>> expectedRows = List.of(Map.of("title", "The Hobbit", "year", "1937"));
+                when(listQueryService.list(eq(Book.class), any(), eq(Sort.by(Sort.Order.desc("year"))), eq(List.of("title", "year")), eq(BookController.LIST_FIELDS), eq(100)))
+                                .thenAnswer(invocation -> expectedRows);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/books/list?author=Tolkien&sort=year,desc&fields=title,year"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                ArgumentCaptor<Specification<Book>> filter = ArgumentCaptor.forClass(Specification.class);
+                verify(listQueryService, times(1)).list(eq(Book.class), filter.capture(), eq(Sort.by(Sort.Order.desc("year"))), eq(List.of("title", "year")), eq(BookController.LIST_FIELDS), eq(100));
+                Root<Book> root = mock(Root.class);
+                CriteriaBuilder cb = mock(CriteriaBuilder.class);
+                filter.getValue().toPredicate(root, mock(CriteriaQuery.class), cb);
+                verify(root, times(1)).get("author");
+                verify(cb, times(1)).equal(root.get("author"), "Tolkien");
+                assertEquals(mapper.writeValueAsString(expectedRows), response.getResponse().getContentAsString());
+        }
+
+        @Test
+        public void logged_out_users_cannot_search_books() throws Exception {
+                mockMvc.perform(get("/api/books/search?q=orwell"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_search_books_a_page_at_a_time() throws Exception {
+
+                // arrange
+
+                Book book = Book.builder()
+                                .id(7)
+                                .title("1984")
+                                .author("George Orwell")
+                                .year("1949")
+                                .build();
+
+                when(textSearchService.searchBooks(eq("george orwell"), eq(PageRequest.of(2, 10)))).thenReturn(List.of(book));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/books/search?q=george orwell&page=2&size=10"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(textSearchService, times(1)).searchBooks("george orwell", PageRequest.of(2, 10));
+                assertEquals(mapper.writeValueAsString(List.of(book)), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void book_search_page_size_is_capped() throws Exception {
+
+                // act
+                mockMvc.perform(get("/api/books/search?q=orwell&page=-1&size=100000"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                verify(textSearchService, times(1)).searchBooks("orwell", PageRequest.of(0, ApiController.MAX_PAGE_SIZE));
+        }
+
+        @Test
+        public void logged_out_users_cannot_get_author_suggestions() throws Exception {
+                mockMvc.perform(get("/api/books/authors?prefix=geo"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_author_suggestions() throws Exception {
+
+                // arrange
+
+                when(autocompleteService.authors(eq("geo"), eq(10))).thenReturn(List.of("George Eliot", "George Orwell"));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/books/authors?prefix=geo"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(autocompleteService, times(1)).authors("geo", 10);
+                assertEquals("[\"George Eliot\",\"George Orwell\"]", response.getResponse().getContentAsString());
+        }
+}
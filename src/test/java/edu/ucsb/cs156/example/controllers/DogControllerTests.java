@@ -5,6 +5,12 @@ import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.Dog;
 import edu.ucsb.cs156.example.repositories.DogRepository;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.services.AutocompleteService;
+import edu.ucsb.cs156.example.services.EntityStreamingService;
+import edu.ucsb.cs156.example.services.TableChangeTracker;
+import edu.ucsb.cs156.example.services.TableWrite;
+import edu.ucsb.cs156.example.services.ListQueryService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,13 +21,26 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.List;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -29,17 +48,35 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
 
 @WebMvcTest(controllers = DogController.class)
 @Import(TestConfig.class)
+@RecordApplicationEvents
 public class DogControllerTests extends ControllerTestCase {
 
     @MockBean
     DogRepository dogRepository;
 
+    @MockBean
+    EntityStreamingService entityStreamingService;
+
+    @MockBean
+    ListQueryService listQueryService;
+
+    @MockBean
+    AutocompleteService autocompleteService;
+
     @MockBean
     UserRepository userRepository;
 
+    @Autowired
+    TableChangeTracker tableChangeTracker;
+
+    @Autowired
+    ApplicationEvents applicationEvents;
+
     // Authorization tests for /api/dogs/admin/all
 
     @Test
@@ -177,6 +214,7 @@ assertEquals("Dog with id 0 not found", json.get("message"));
 
         // assert
         verify(dogRepository, times(1)).save(annie);
+        assertEquals(List.of(TableWrite.saved("dog", List.of(annie))), applicationEvents.stream(TableWrite.class).toList());
         String expectedJson = mapper.writeValueAsString(annie);
         String responseString = response.getResponse().getContentAsString();
         assertEquals(expectedJson, responseString);
@@ -187,13 +225,7 @@ assertEquals("Dog with id 0 not found", json.get("message"));
     public void admin_can_delete_a_dog() throws Exception {
         // arrange
 
-        Dog annie = Dog.builder()
-                .id(2)
-                .name("Annie")
-                .breed("Poodle")
-                .build();
-
-        when(dogRepository.findById(eq(2L))).thenReturn(Optional.of(annie));
+        when(dogRepository.deleteRowById(eq(2L))).thenReturn(1);
 
         // act
         MvcResult response = mockMvc.perform(
@@ -202,8 +234,9 @@ assertEquals("Dog with id 0 not found", json.get("message"));
                 .andExpect(status().isOk()).andReturn();
 
         // assert
-        verify(dogRepository, times(1)).findById(2L);
-        verify(dogRepository, times(1)).delete(any());
+        verify(dogRepository, times(1)).deleteRowById(2L);
+
+        assertEquals(List.of(TableWrite.deleted("dog", 2L)), applicationEvents.stream(TableWrite.class).toList());
 
         Map<String, Object> json = responseToJson(response);
         assertEquals("Dog with id 2 deleted", json.get("message"));
@@ -215,7 +248,7 @@ public void admin_tries_to_delete_non_existant_dog_and_gets_right_error_message(
 throws Exception {
 // arrange
 
-when(dogRepository.findById(eq(0L))).thenReturn(Optional.empty());
+when(dogRepository.deleteRowById(eq(0L))).thenReturn(0);
 
 // act
 MvcResult response = mockMvc.perform(
@@ -224,7 +257,7 @@ delete("/api/dogs?id=0")
 .andExpect(status().isNotFound()).andReturn();
 
 // assert
-verify(dogRepository, times(1)).findById(0L);
+verify(dogRepository, times(1)).deleteRowById(0L);
 Map<String, Object> json = responseToJson(response);
 assertEquals("Dog with id 0 not found", json.get("message"));
 }
@@ -234,12 +267,6 @@ assertEquals("Dog with id 0 not found", json.get("message"));
     public void admin_can_edit_an_existing_dog() throws Exception {
         // arrange
 
-        Dog annieOriginal = Dog.builder()
-                .id(2)
-                .name("Annie")
-                .breed("Poodle")
-                .build();
-
         Dog annieEdited = Dog.builder()
                 .id(2)
                 .name("Annie")
@@ -248,7 +275,7 @@ assertEquals("Dog with id 0 not found", json.get("message"));
 
         String requestBody = mapper.writeValueAsString(annieEdited);
 
-        when(dogRepository.findById(eq(2L))).thenReturn(Optional.of(annieOriginal));
+        when(dogRepository.updateRowReturningVersion(eq(2L), eq(annieEdited))).thenReturn(Optional.of(4L));
 
         // act
         MvcResult response = mockMvc.perform(
@@ -257,13 +284,15 @@ assertEquals("Dog with id 0 not found", json.get("message"));
                         .characterEncoding("utf-8")
                         .content(requestBody)
                         .with(csrf()))
-                .andExpect(status().isOk()).andReturn();
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2-4\"")).andReturn();
 
         // assert
-        verify(dogRepository, times(1)).findById(2L);
-        verify(dogRepository, times(1)).save(annieEdited); // should be saved with updated info
+        annieEdited.setVersion(4L); // the version the update returned
+        verify(dogRepository, times(1)).updateRowReturningVersion(2L, annieEdited); // should be updated in place
+        assertEquals(List.of(TableWrite.saved("dog", List.of(annieEdited))), applicationEvents.stream(TableWrite.class).toList());
         String responseString = response.getResponse().getContentAsString();
-        assertEquals(requestBody, responseString);
+        assertEquals(mapper.writeValueAsString(annieEdited), responseString);
     }
 
     @WithMockUser(roles = { "ADMIN", "USER" })
@@ -279,7 +308,7 @@ assertEquals("Dog with id 0 not found", json.get("message"));
 
         String requestBody = mapper.writeValueAsString(annieEdited);
 
-        when(dogRepository.findById(eq(2L))).thenReturn(Optional.empty());
+        when(dogRepository.updateRowReturningVersion(eq(2L), eq(annieEdited))).thenReturn(Optional.empty());
 
         // act
         MvcResult response = mockMvc.perform(
@@ -291,9 +320,427 @@ assertEquals("Dog with id 0 not found", json.get("message"));
                 .andExpect(status().isNotFound()).andReturn();
 
         // assert
-        verify(dogRepository, times(1)).findById(2L);
+        verify(dogRepository, times(1)).updateRowReturningVersion(2L, annieEdited);
         Map<String, Object> json = responseToJson(response);
         assertEquals("Dog with id 2 not found", json.get("message"));
 
     }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_can_get_a_page_of_dogs_with_a_next_cursor() throws Exception {
+
+        // arrange
+
+        Dog first = Dog.builder().id(4).name("Max").breed("Golden Retriever").build();
+        Dog second = Dog.builder().id(7).name("Annie").breed("Poodle").build();
+        Dog third = Dog.builder().id(9).name("Rex").breed("Boxer").build();
+
+        when(dogRepository.findByIdGreaterThanOrderByIdAsc(eq(3L), eq(PageRequest.of(0, 3))))
+                .thenReturn(new ArrayList<>(Arrays.asList(first, second, third)));
+
+        // act
+        MvcResult response = mockMvc.perform(get("/api/dogs/page?after=3&limit=2"))
+                .andExpect(status().isOk()).andReturn();
+
+        // assert
+
+        verify(dogRepository, times(1)).findByIdGreaterThanOrderByIdAsc(eq(3L), eq(PageRequest.of(0, 3)));
+        String expectedJson = mapper.writeValueAsString(new KeysetPage<>(Arrays.asList(first, second), 7L));
+        String responseString = response.getResponse().getContentAsString();
+        assertEquals(expectedJson, responseString);
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_gets_no_next_cursor_on_the_last_page_of_dogs() throws Exception {
+
+        // arrange
+
+        Dog first = Dog.builder().id(4).name("Max").breed("Golden Retriever").build();
+        Dog second = Dog.builder().id(7).name("Annie").breed("Poodle").build();
+
+        when(dogRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), eq(PageRequest.of(0, 101))))
+                .thenReturn(new ArrayList<>(Arrays.asList(first, second)));
+
+        // act
+        MvcResult response = mockMvc.perform(get("/api/dogs/page"))
+                .andExpect(status().isOk()).andReturn();
+
+        // assert
+
+        verify(dogRepository, times(1)).findByIdGreaterThanOrderByIdAsc(eq(0L), eq(PageRequest.of(0, 101)));
+        String expectedJson = mapper.writeValueAsString(new KeysetPage<Dog, Long>(Arrays.asList(first, second), null));
+        String responseString = response.getResponse().getContentAsString();
+        assertEquals(expectedJson, responseString);
+    }
+
+    @Test
+    public void logged_out_users_cannot_stream_all() throws Exception {
+        mockMvc.perform(get("/api/dogs/all/stream"))
+                .andExpect(status().is(403));
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_can_stream_all_dogs() throws Exception {
+
+        // arrange
+
+        when(entityStreamingService.ndjson(any())).thenReturn(ResponseEntity.ok().build());
+
+        // act
+        mockMvc.perform(get("/api/dogs/all/stream"))
+                .andExpect(status().isOk());
+
+        // assert
+
+        ArgumentCaptor<Supplier> rows = ArgumentCaptor.forClass(Supplier.class);
+        verify(entityStreamingService, times(1)).ndjson(rows.capture());
+        rows.getValue().get();
+        verify(dogRepository, times(1)).streamAll();
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_regular_users_cannot_bulk_post() throws Exception {
+        mockMvc.perform(post("/api/dogs/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]")
+                .with(csrf()))
+                .andExpect(status().is(403)); // only admins can post
+    }
+
+    @WithMockUser(roles = { "ADMIN", "USER" })
+    @Test
+    public void an_admin_user_can_bulk_post_dogs_and_supplied_ids_are_ignored() throws Exception {
+        // arrange
+
+        Dog first = Dog.builder()
+                .id(17)
+                .name("Max")
+                .breed("Golden Retriever")
+                .build();
+
+        Dog second = Dog.builder()
+                .name("Annie")
+                .breed("Poodle")
+                .build();
+
+        Dog firstSaved = Dog.builder()
+                .id(51)
+                .name("Max")
+                .breed("Golden Retriever")
+                .build();
+
+        Dog secondSaved = Dog.builder()
+                .id(52)
+                .name("Annie")
+                .breed("Poodle")
+                .build();
+
+        String requestBody = mapper.writeValueAsString(Arrays.asList(first, second));
+        first.setId(0);
+        when(dogRepository.saveAll(eq(Arrays.asList(first, second))))
+                .thenReturn(Arrays.asList(firstSaved, secondSaved));
+
+        // act
+        MvcResult response = mockMvc.perform(
+                post("/api/dogs/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding("utf-8")
+                        .content(requestBody)
+                        .with(csrf()))
+                .andExpect(status().isOk()).andReturn();
+
+        // assert
+        verify(dogRepository, times(1)).saveAll(Arrays.asList(first, second));
+        assertEquals(List.of(TableWrite.saved("dog", Arrays.asList(firstSaved, secondSaved))), applicationEvents.stream(TableWrite.class).toList());
+        String expectedJson = mapper.writeValueAsString(Arrays.asList(firstSaved, secondSaved));
+        String responseString = response.getResponse().getContentAsString();
+        assertEquals(expectedJson, responseString);
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_gets_304_for_all_dogs_when_the_table_is_unchanged() throws Exception {
+
+        // arrange
+
+        String etag = tableChangeTracker.listTag("dog");
+
+        // act
+        mockMvc.perform(get("/api/dogs/all").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        // assert
+
+        verify(dogRepository, times(0)).findAll();
+    }
+
+    @WithMockUser(roles = { "ADMIN", "USER" })
+    @Test
+    public void all_dogs_are_refetched_once_a_dog_has_been_deleted() throws Exception {
+
+        // arrange
+
+        String etag = tableChangeTracker.listTag("dog");
+        when(dogRepository.deleteRowById(eq(2L))).thenReturn(1);
+        mockMvc.perform(delete("/api/dogs?id=2").with(csrf()))
+                .andExpect(status().isOk());
+
+        // act
+        MvcResult response = mockMvc.perform(get("/api/dogs/all").header("If-None-Match", etag))
+                .andExpect(status().isOk()).andReturn();
+
+        // assert
+
+        verify(dogRepository, times(1)).findAll();
+        assertEquals(tableChangeTracker.listTag("dog"), response.getResponse().getHeader("ETag"));
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_gets_304_for_a_dog_that_has_not_changed() throws Exception {
+
+        // arrange
+
+        Dog dog = Dog.builder()
+                .id(2)
+                .version(3L)
+                .name("Annie")
+                .breed("Yorkie")
+                .build();
+
+        when(dogRepository.findById(eq(2L))).thenReturn(Optional.of(dog));
+
+        // act
+        mockMvc.perform(get("/api/dogs?id=2").header("If-None-Match", "\"2-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"2-3\""))
+                .andExpect(content().string(""));
+    }
+
+    @WithMockUser(roles = { "ADMIN", "USER" })
+    @Test
+    public void admin_can_edit_a_dog_with_if_match_and_gets_the_new_etag() throws Exception {
+        // arrange
+
+        Dog edited = Dog.builder()
+                .id(2)
+                .name("Annie")
+                .breed("Yorkie")
+                .build();
+
+        String requestBody = mapper.writeValueAsString(edited);
+
+        when(dogRepository.updateRowByIdAndVersion(eq(2L), eq(3L), eq(edited))).thenReturn(1);
+
+        // act
+        MvcResult response = mockMvc.perform(
+                put("/api/dogs?id=2")
+                        .header("If-Match", "\"2-3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding("utf-8")
+                        .content(requestBody)
+                        .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2-4\"")).andReturn();
+
+        // assert
+        edited.setVersion(4L); // the request was made with the version from If-Match
+        verify(dogRepository, times(1)).updateRowByIdAndVersion(2L, 3L, edited);
+        assertEquals(mapper.writeValueAsString(edited), response.getResponse().getContentAsString());
+    }
+
+    @WithMockUser(roles = { "ADMIN", "USER" })
+    @Test
+    public void admin_gets_412_editing_a_dog_that_changed_since_it_was_read() throws Exception {
+        // arrange
+
+        Dog edited = Dog.builder()
+                .id(2)
+                .name("Annie")
+                .breed("Yorkie")
+                .build();
+
+        String requestBody = mapper.writeValueAsString(edited);
+
+        when(dogRepository.updateRowByIdAndVersion(eq(2L), eq(3L), eq(edited))).thenReturn(0);
+        when(dogRepository.findVersionById(eq(2L))).thenReturn(Optional.of(4L));
+
+        // act
+        MvcResult response = mockMvc.perform(
+                put("/api/dogs?id=2")
+                        .header("If-Match", "\"2-3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding("utf-8")
+                        .content(requestBody)
+                        .with(csrf()))
+                .andExpect(status().isPreconditionFailed()).andReturn();
+
+        // assert
+        Map<String, Object> json = responseToJson(response);
+        assertEquals("Dog with id 2 has been modified since it was read", json.get("message"));
+    }
+
+    @WithMockUser(roles = { "ADMIN", "USER" })
+    @Test
+    public void admin_gets_412_for_an_if_match_that_names_another_dog() throws Exception {
+        // arrange
+
+        Dog edited = Dog.builder()
+                .id(2)
+                .name("Annie")
+                .breed("Yorkie")
+                .build();
+
+        String requestBody = mapper.writeValueAsString(edited);
+
+        // act
+        mockMvc.perform(
+                put("/api/dogs?id=2")
+                        .header("If-Match", "\"3-3\", W/\"2-3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding("utf-8")
+                        .content(requestBody)
+                        .with(csrf()))
+                .andExpect(status().isPreconditionFailed());
+
+        // assert
+        verify(dogRepository, times(0)).updateRowByIdAndVersion(anyLong(), anyLong(), any());
+    }
+
+    @WithMockUser(roles = { "ADMIN", "USER" })
+    @Test
+    public void admin_edit_with_a_version_in_the_body_only_updates_that_version() throws Exception {
+        // arrange
+
+        Dog edited = Dog.builder()
+                .id(2)
+                .version(5L)
+                .name("Annie")
+                .breed("Yorkie")
+                .build();
+
+        String requestBody = mapper.writeValueAsString(edited);
+
+        when(dogRepository.updateRowByIdAndVersion(eq(2L), eq(5L), eq(edited))).thenReturn(1);
+
+        // act
+        MvcResult response = mockMvc.perform(
+                put("/api/dogs?id=2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding("utf-8")
+                        .content(requestBody)
+                        .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2-6\"")).andReturn();
+
+        // assert
+        edited.setVersion(6L);
+        verify(dogRepository, times(1)).updateRowByIdAndVersion(2L, 5L, edited);
+        assertEquals(mapper.writeValueAsString(edited), response.getResponse().getContentAsString());
+    }
+
+    @WithMockUser(roles = { "ADMIN", "USER" })
+    @Test
+    public void admin_gets_409_editing_a_stale_version_of_a_dog() throws Exception {
+        // arrange
+
+        Dog edited = Dog.builder()
+                .id(2)
+                .version(5L)
+                .name("Annie")
+                .breed("Yorkie")
+                .build();
+
+        String requestBody = mapper.writeValueAsString(edited);
+
+        when(dogRepository.updateRowByIdAndVersion(eq(2L), eq(5L), eq(edited))).thenReturn(0);
+        when(dogRepository.findVersionById(eq(2L))).thenReturn(Optional.of(6L));
+
+        // act
+        MvcResult response = mockMvc.perform(
+                put("/api/dogs?id=2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding("utf-8")
+                        .content(requestBody)
+                        .with(csrf()))
+                .andExpect(status().isConflict()).andReturn();
+
+        // assert
+        Map<String, Object> json = responseToJson(response);
+        assertEquals("ObjectOptimisticLockingFailureException", json.get("type"));
+    }
+
+    @Test
+    public void logged_out_users_cannot_list_dogs() throws Exception {
+        mockMvc.perform(get("/api/dogs/list"))
+                .andExpect(status().is(403));
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_can_list_dogs_filtered_sorted_and_projected() throws Exception {
+
+        // arrange
+
+        List<Map<String, Object>> expectedRows = List.of(Map.of("id", 1, "name", "Max"));
+        when(listQueryService.list(eq(Dog.class), any(), eq(Sort.by(Sort.Order.asc("breed"), Sort.Order.desc("name"))), eq(List.of("id", "name")), eq(DogController.LIST_FIELDS), eq(100)))
+                .thenAnswer(invocation -> expectedRows);
+
+        // act
+        MvcResult response = mockMvc.perform(get("/api/dogs/list?breed=Poodle&sort=breed&sort=name,desc&fields=id,name"))
+                .andExpect(status().isOk()).andReturn();
+
+        // assert
+
+        ArgumentCaptor<Specification<Dog>> filter = ArgumentCaptor.forClass(Specification.class);
+        verify(listQueryService, times(1)).list(eq(Dog.class), filter.capture(), eq(Sort.by(Sort.Order.asc("breed"), Sort.Order.desc("name"))), eq(List.of("id", "name")), eq(DogController.LIST_FIELDS), eq(100));
+        Root<Dog> root = mock(Root.class);
+        CriteriaBuilder cb = mock(CriteriaBuilder.class);
+        filter.getValue().toPredicate(root, mock(CriteriaQuery.class), cb);
+        verify(root, times(1)).get("breed");
+        verify(cb, times(1)).equal(root.get("breed"), "Poodle");
+        assertEquals(mapper.writeValueAsString(expectedRows), response.getResponse().getContentAsString());
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void dog_list_limit_is_capped_at_the_max_page_size() throws Exception {
+        // act
+        mockMvc.perform(get("/api/dogs/list?limit=5000"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/dogs/list?limit=0"))
+                .andExpect(status().isOk());
+
+        // assert
+        verify(listQueryService, times(1)).list(eq(Dog.class), any(), any(), any(), eq(DogController.LIST_FIELDS), eq(1000));
+        verify(listQueryService, times(1)).list(eq(Dog.class), any(), any(), any(), eq(DogController.LIST_FIELDS), eq(1));
+    }
+
+    @Test
+    public void logged_out_users_cannot_get_breed_suggestions() throws Exception {
+        mockMvc.perform(get("/api/dogs/breeds?prefix=po"))
+                .andExpect(status().is(403));
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_can_get_breed_suggestions() throws Exception {
+
+        // arrange
+
+        when(autocompleteService.breeds(eq("po"), eq(5))).thenReturn(List.of("Pomeranian", "Poodle"));
+
+        // act
+        MvcResult response = mockMvc.perform(get("/api/dogs/breeds?prefix=po&limit=5"))
+                .andExpect(status().isOk()).andReturn();
+
+        // assert
+
+        verify(autocompleteService, times(1)).breeds("po", 5);
+        assertEquals("[\"Pomeranian\",\"Poodle\"]", response.getResponse().getContentAsString());
+    }
 }
@@ -5,6 +5,12 @@ import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.Restaurant;
 import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.services.EntityStreamingService;
+import edu.ucsb.cs156.example.services.TableChangeTracker;
+import edu.ucsb.cs156.example.services.TableWrite;
+import edu.ucsb.cs156.example.services.ListQueryService;
+import edu.ucsb.cs156.example.services.TextSearchService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,13 +21,26 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.List;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -29,17 +48,35 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
 
 @WebMvcTest(controllers = RestaurantController.class)
 @Import(TestConfig.class)
+@RecordApplicationEvents
 public class RestaurantControllerTests extends ControllerTestCase {
 
     @MockBean
     RestaurantRepository restaurantRepository;
 
+    @MockBean
+    EntityStreamingService entityStreamingService;
+
+    @MockBean
+    ListQueryService listQueryService;
+
+    @MockBean
+    TextSearchService textSearchService;
+
     @MockBean
     UserRepository userRepository;
 
+    @Autowired
+    TableChangeTracker tableChangeTracker;
+
+    @Autowired
+    ApplicationEvents applicationEvents;
+
     // Authorization tests for /api/Restaurant/admin/all
 
     @Test
@@ -177,6 +214,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
 
         // assert
         verify(restaurantRepository, times(1)).save(restaurant);
+        assertEquals(List.of(TableWrite.saved("restaurant", List.of(restaurant))), applicationEvents.stream(TableWrite.class).toList());
         String expectedJson = mapper.writeValueAsString(restaurant);
         String responseString = response.getResponse().getContentAsString();
         assertEquals(expectedJson, responseString);
@@ -187,12 +225,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
     public void admin_can_delete_a_restaurant() throws Exception {
         // arrange
 
-        Restaurant restaurant = Restaurant.builder()
-                .name("Restaurant 1")
-                .description("Description 1")
-                .build();
-
-        when(restaurantRepository.findById(eq(1L))).thenReturn(Optional.of(restaurant));
+        when(restaurantRepository.deleteRowById(eq(1L))).thenReturn(1);
 
         // act
         MvcResult response = mockMvc.perform(
@@ -201,8 +234,9 @@ public class RestaurantControllerTests extends ControllerTestCase {
                 .andExpect(status().isOk()).andReturn();
 
         // assert
-        verify(restaurantRepository, times(1)).findById(1L);
-        verify(restaurantRepository, times(1)).delete(any());
+        verify(restaurantRepository, times(1)).deleteRowById(1L);
+
+        assertEquals(List.of(TableWrite.deleted("restaurant", 1L)), applicationEvents.stream(TableWrite.class).toList());
 
         Map<String, Object> json = responseToJson(response);
         assertEquals("Restaurant with id 1 deleted", json.get("message"));
@@ -214,7 +248,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
             throws Exception {
         // arrange
 
-        when(restaurantRepository.findById(eq(1L))).thenReturn(Optional.empty());
+        when(restaurantRepository.deleteRowById(eq(1L))).thenReturn(0);
 
         // act
         MvcResult response = mockMvc.perform(
@@ -223,7 +257,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
                 .andExpect(status().isNotFound()).andReturn();
 
         // assert
-        verify(restaurantRepository, times(1)).findById(1L);
+        verify(restaurantRepository, times(1)).deleteRowById(1L);
         Map<String, Object> json = responseToJson(response);
         assertEquals("Restaurant with id 1 not found", json.get("message"));
     }
@@ -233,19 +267,15 @@ public class RestaurantControllerTests extends ControllerTestCase {
     public void admin_can_edit_an_existing_restaurant() throws Exception {
         // arrange
 
-        Restaurant restaurantOriginal = Restaurant.builder()
-                .name("Restaurant 1")
-                .description("Description 1")
-                .build();
-
         Restaurant restaurantEdited = Restaurant.builder()
+                .id(1)
                 .name("Restaurant 1")
                 .description("Description 2")
                 .build();
 
         String requestBody = mapper.writeValueAsString(restaurantEdited);
 
-        when(restaurantRepository.findById(eq(1L))).thenReturn(Optional.of(restaurantOriginal));
+        when(restaurantRepository.updateRowReturningVersion(eq(1L), eq(restaurantEdited))).thenReturn(Optional.of(4L));
 
         // act
         MvcResult response = mockMvc.perform(
@@ -254,13 +284,15 @@ public class RestaurantControllerTests extends ControllerTestCase {
                         .characterEncoding("utf-8")
                         .content(requestBody)
                         .with(csrf()))
-                .andExpect(status().isOk()).andReturn();
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-4\"")).andReturn();
 
         // assert
-        verify(restaurantRepository, times(1)).findById(1L);
-        verify(restaurantRepository, times(1)).save(restaurantEdited); // should be saved with updated info
+        restaurantEdited.setVersion(4L); // the version the update returned
+        verify(restaurantRepository, times(1)).updateRowReturningVersion(1L, restaurantEdited); // should be updated in place
+        assertEquals(List.of(TableWrite.saved("restaurant", List.of(restaurantEdited))), applicationEvents.stream(TableWrite.class).toList());
         String responseString = response.getResponse().getContentAsString();
-        assertEquals(requestBody, responseString);
+        assertEquals(mapper.writeValueAsString(restaurantEdited), responseString);
     }
 
     @WithMockUser(roles = { "ADMIN", "USER" })
@@ -275,7 +307,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
 
         String requestBody = mapper.writeValueAsString(restaurantEdited);
 
-        when(restaurantRepository.findById(eq(1L))).thenReturn(Optional.empty());
+        when(restaurantRepository.updateRowReturningVersion(eq(1L), eq(restaurantEdited))).thenReturn(Optional.empty());
 
         // act
         MvcResult response = mockMvc.perform(
@@ -287,9 +319,317 @@ public class RestaurantControllerTests extends ControllerTestCase {
                 .andExpect(status().isNotFound()).andReturn();
 
         // assert
-        verify(restaurantRepository, times(1)).findById(1L);
+        verify(restaurantRepository, times(1)).updateRowReturningVersion(1L, restaurantEdited);
         Map<String, Object> json = responseToJson(response);
         assertEquals("Restaurant with id 1 not found", json.get("message"));
 
     }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_can_get_a_page_of_restaurants_with_a_next_cursor() throws Exception {
+
+        // arrange
+
+        Restaurant first = Restaurant.builder().id(4).name("Restaurant 1").description("Description 1").build();
+        Restaurant second = Restaurant.builder().id(7).name("Restaurant 2").description("Description 2").build();
+        Restaurant third = Restaurant.builder().id(9).name("Restaurant 3").description("Description 3").build();
+
+        when(restaurantRepository.findByIdGreaterThanOrderByIdAsc(eq(3L), eq(PageRequest.of(0, 3))))
+                .thenReturn(new ArrayList<>(Arrays.asList(first, second, third)));
+
+        // act
+        MvcResult response = mockMvc.perform(get("/api/Restaurant/page?after=3&limit=2"))
+                .andExpect(status().isOk()).andReturn();
+
+        // assert
+
+        verify(restaurantRepository, times(1)).findByIdGreaterThanOrderByIdAsc(eq(3L), eq(PageRequest.of(0, 3)));
+        String expectedJson = mapper.writeValueAsString(new KeysetPage<>(Arrays.asList(first, second), 7L));
+        String responseString = response.getResponse().getContentAsString();
+        assertEquals(expectedJson, responseString);
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_gets_no_next_cursor_on_the_last_page_of_restaurants() throws Exception {
+
+        // arrange
+
+        Restaurant first = Restaurant.builder().id(4).name("Restaurant 1").description("Description 1").build();
+        Restaurant second = Restaurant.builder().id(7).name("Restaurant 2").description("Description 2").build();
+
+        when(restaurantRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), eq(PageRequest.of(0, 101))))
+                .thenReturn(new ArrayList<>(Arrays.asList(first, second)));
+
+        // act
+        MvcResult response = mockMvc.perform(get("/api/Restaurant/page"))
+                .andExpect(status().isOk()).andReturn();
+
+        // assert
+
+        verify(restaurantRepository, times(1)).findByIdGreaterThanOrderByIdAsc(eq(0L), eq(PageRequest.of(0, 101)));
+        String expectedJson = mapper.writeValueAsString(new KeysetPage<Restaurant, Long>(Arrays.asList(first, second), null));
+        String responseString = response.getResponse().getContentAsString();
+        assertEquals(expectedJson, responseString);
+    }
+
+    @Test
+    public void logged_out_users_cannot_stream_all() throws Exception {
+        mockMvc.perform(get("/api/Restaurant/all/stream"))
+                .andExpect(status().is(403));
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_can_stream_all_restaurants() throws Exception {
+
+        // arrange
+
+        when(entityStreamingService.ndjson(any())).thenReturn(ResponseEntity.ok().build());
+
+        // act
+        mockMvc.perform(get("/api/Restaurant/all/stream"))
+                .andExpect(status().isOk());
+
+        // assert
+
+        ArgumentCaptor<Supplier> rows = ArgumentCaptor.forClass(Supplier.class);
+        verify(entityStreamingService, times(1)).ndjson(rows.capture());
+        rows.getValue().get();
+        verify(restaurantRepository, times(1)).streamAll();
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_regular_users_cannot_bulk_post() throws Exception {
+        mockMvc.perform(post("/api/Restaurant/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]")
+                .with(csrf()))
+                .andExpect(status().is(403)); // only admins can post
+    }
+
+    @WithMockUser(roles = { "ADMIN", "USER" })
+    @Test
+    public void an_admin_user_can_bulk_post_restaurants_and_supplied_ids_are_ignored() throws Exception {
+        // arrange
+
+        Restaurant first = Restaurant.builder()
+                .id(17)
+                .name("Restaurant 1")
+                .description("Description 1")
+                .build();
+
+        Restaurant second = Restaurant.builder()
+                .name("Restaurant 2")
+                .description("Description 2")
+                .build();
+
+        Restaurant firstSaved = Restaurant.builder()
+                .id(51)
+                .name("Restaurant 1")
+                .description("Description 1")
+                .build();
+
+        Restaurant secondSaved = Restaurant.builder()
+                .id(52)
+                .name("Restaurant 2")
+                .description("Description 2")
+                .build();
+
+        String requestBody = mapper.writeValueAsString(Arrays.asList(first, second));
+        first.setId(0);
+        when(restaurantRepository.saveAll(eq(Arrays.asList(first, second))))
+                .thenReturn(Arrays.asList(firstSaved, secondSaved));
+
+        // act
+        MvcResult response = mockMvc.perform(
+                post("/api/Restaurant/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding("utf-8")
+                        .content(requestBody)
+                        .with(csrf()))
+                .andExpect(status().isOk()).andReturn();
+
+        // assert
+        verify(restaurantRepository, times(1)).saveAll(Arrays.asList(first, second));
+        assertEquals(List.of(TableWrite.saved("restaurant", Arrays.asList(firstSaved, secondSaved))), applicationEvents.stream(TableWrite.class).toList());
+        String expectedJson = mapper.writeValueAsString(Arrays.asList(firstSaved, secondSaved));
+        String responseString = response.getResponse().getContentAsString();
+        assertEquals(expectedJson, responseString);
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_gets_304_for_all_restaurants_when_the_table_is_unchanged() throws Exception {
+
+        // arrange
+
+        String etag = tableChangeTracker.listTag("restaurant");
+
+        // act
+        mockMvc.perform(get("/api/Restaurant/all").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        // assert
+
+        verify(restaurantRepository, times(0)).findAll();
+    }
+
+    @WithMockUser(roles = { "ADMIN", "USER" })
+    @Test
+    public void admin_can_edit_a_restaurant_with_if_match_and_gets_the_new_etag() throws Exception {
+        // arrange
+
+        Restaurant edited = Restaurant.builder()
+                .id(1)
+                .name("Restaurant 1")
+                .description("Description 2")
+                .build();
+
+        String requestBody = mapper.writeValueAsString(edited);
+
+        when(restaurantRepository.updateRowByIdAndVersion(eq(1L), eq(3L), eq(edited))).thenReturn(1);
+
+        // act
+        MvcResult response = mockMvc.perform(
+                put("/api/Restaurant?id=1")
+                        .header("If-Match", "\"1-3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding("utf-8")
+                        .content(requestBody)
+                        .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-4\"")).andReturn();
+
+        // assert
+        edited.setVersion(4L); // the request was made with the version from If-Match
+        verify(restaurantRepository, times(1)).updateRowByIdAndVersion(1L, 3L, edited);
+        assertEquals(mapper.writeValueAsString(edited), response.getResponse().getContentAsString());
+    }
+
+    @WithMockUser(roles = { "ADMIN", "USER" })
+    @Test
+    public void admin_gets_412_editing_a_restaurant_that_changed_since_it_was_read() throws Exception {
+        // arrange
+
+        Restaurant edited = Restaurant.builder()
+                .id(1)
+                .name("Restaurant 1")
+                .description("Description 2")
+                .build();
+
+        String requestBody = mapper.writeValueAsString(edited);
+
+        when(restaurantRepository.updateRowByIdAndVersion(eq(1L), eq(3L), eq(edited))).thenReturn(0);
+        when(restaurantRepository.findVersionById(eq(1L))).thenReturn(Optional.of(4L));
+
+        // act
+        MvcResult response = mockMvc.perform(
+                put("/api/Restaurant?id=1")
+                        .header("If-Match", "\"1-3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding("utf-8")
+                        .content(requestBody)
+                        .with(csrf()))
+                .andExpect(status().isPreconditionFailed()).andReturn();
+
+        // assert
+        Map<String, Object> json = responseToJson(response);
+        assertEquals("Restaurant with id 1 has been modified since it was read", json.get("message"));
+    }
+
+    @WithMockUser(roles = { "ADMIN", "USER" })
+    @Test
+    public void admin_gets_409_editing_a_stale_version_of_a_restaurant() throws Exception {
+        // arrange
+
+        Restaurant edited = Restaurant.builder()
+                .id(1)
+                .version(5L)
+                .name("Restaurant 1")
+                .description("Description 2")
+                .build();
+
+        String requestBody = mapper.writeValueAsString(edited);
+
+        when(restaurantRepository.updateRowByIdAndVersion(eq(1L), eq(5L), eq(edited))).thenReturn(0);
+        when(restaurantRepository.findVersionById(eq(1L))).thenReturn(Optional.of(6L));
+
+        // act
+        MvcResult response = mockMvc.perform(
+                put("/api/Restaurant?id=1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding("utf-8")
+                        .content(requestBody)
+                        .with(csrf()))
+                .andExpect(status().isConflict()).andReturn();
+
+        // assert
+        Map<String, Object> json = responseToJson(response);
+        assertEquals("ObjectOptimisticLockingFailureException", json.get("type"));
+    }
+
+    @Test
+    public void logged_out_users_cannot_list_restaurants() throws Exception {
+        mockMvc.perform(get("/api/Restaurant/list"))
+                .andExpect(status().is(403));
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_can_list_restaurants_filtered_sorted_and_projected() throws Exception {
+
+        // arrange
+
+        List<Map<String, Object>> expectedRows = List.of(Map.of("id", 3, "description", "Burritos"));
+        when(listQueryService.list(eq(Restaurant.class), any(), eq(Sort.unsorted()), eq(List.of("id", "description")), eq(RestaurantController.LIST_FIELDS), eq(100)))
+                .thenAnswer(invocation -> expectedRows);
+
+        // act
+        MvcResult response = mockMvc.perform(get("/api/Restaurant/list?name=Freebirds&fields=id,description"))
+                .andExpect(status().isOk()).andReturn();
+
+        // assert
+
+        ArgumentCaptor<Specification<Restaurant>> filter = ArgumentCaptor.forClass(Specification.class);
+        verify(listQueryService, times(1)).list(eq(Restaurant.class), filter.capture(), eq(Sort.unsorted()), eq(List.of("id", "description")), eq(RestaurantController.LIST_FIELDS), eq(100));
+        Root<Restaurant> root = mock(Root.class);
+        CriteriaBuilder cb = mock(CriteriaBuilder.class);
+        filter.getValue().toPredicate(root, mock(CriteriaQuery.class), cb);
+        verify(root, times(1)).get("name");
+        verify(cb, times(1)).equal(root.get("name"), "Freebirds");
+        assertEquals(mapper.writeValueAsString(expectedRows), response.getResponse().getContentAsString());
+    }
+
+    @Test
+    public void logged_out_users_cannot_search_restaurants() throws Exception {
+        mockMvc.perform(get("/api/Restaurant/search?q=tacos"))
+                .andExpect(status().is(403));
+    }
+
+    @WithMockUser(roles = { "USER" })
+    @Test
+    public void logged_in_user_can_search_restaurants() throws Exception {
+
+        // arrange
+
+        Restaurant restaurant = Restaurant.builder()
+                .id(3)
+                .name("Freebirds")
+                .description("Burritos and tacos")
+                .build();
+
+        when(textSearchService.searchRestaurants(eq("tacos"), eq(PageRequest.of(0, 20)))).thenReturn(List.of(restaurant));
+
+        // act
+        MvcResult response = mockMvc.perform(get("/api/Restaurant/search?q=tacos"))
+                .andExpect(status().isOk()).andReturn();
+
+        // assert
+
+        verify(textSearchService, times(1)).searchRestaurants("tacos", PageRequest.of(0, 20));
+        assertEquals(mapper.writeValueAsString(List.of(restaurant)), response.getResponse().getContentAsString());
+    }
 }
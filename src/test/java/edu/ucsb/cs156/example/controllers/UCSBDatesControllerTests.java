@@ -5,6 +5,11 @@ import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.UCSBDate;
 import edu.ucsb.cs156.example.repositories.UCSBDateRepository;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.services.EntityStreamingService;
+import edu.ucsb.cs156.example.services.TableChangeTracker;
+import edu.ucsb.cs156.example.services.TableWrite;
+import edu.ucsb.cs156.example.services.ListQueryService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,7 +20,15 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -24,6 +37,11 @@ import static org.springframework.security.test.web.servlet.request.SecurityMock
 import java.time.LocalDateTime;
 
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.List;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -31,17 +49,32 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
 
 @WebMvcTest(controllers = UCSBDatesController.class)
 @Import(TestConfig.class)
+@RecordApplicationEvents
 public class UCSBDatesControllerTests extends ControllerTestCase {
 
         @MockBean
         UCSBDateRepository ucsbDateRepository;
 
+        @MockBean
+        EntityStreamingService entityStreamingService;
+
+        @MockBean
+        ListQueryService listQueryService;
+
         @MockBean
         UserRepository userRepository;
 
+        @Autowired
+        TableChangeTracker tableChangeTracker;
+
+        @Autowired
+        ApplicationEvents applicationEvents;
+
         // Authorization tests for /api/ucsbdates/admin/all
 
         @Test
@@ -189,6 +222,7 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
 
                 // assert
                 verify(ucsbDateRepository, times(1)).save(ucsbDate1);
+                assertEquals(List.of(TableWrite.saved("ucsbdates", List.of(ucsbDate1))), applicationEvents.stream(TableWrite.class).toList());
                 String expectedJson = mapper.writeValueAsString(ucsbDate1);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(expectedJson, responseString);
@@ -201,13 +235,8 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
 
                 LocalDateTime ldt1 = LocalDateTime.parse("2022-01-03T00:00:00");
 
-                UCSBDate ucsbDate1 = UCSBDate.builder()
-                                .name("firstDayOfClasses")
-                                .quarterYYYYQ("20222")
-                                .localDateTime(ldt1)
-                                .build();
 
-                when(ucsbDateRepository.findById(eq(15L))).thenReturn(Optional.of(ucsbDate1));
+                when(ucsbDateRepository.deleteRowById(eq(15L))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -216,8 +245,8 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(ucsbDateRepository, times(1)).findById(15L);
-                verify(ucsbDateRepository, times(1)).delete(any());
+                verify(ucsbDateRepository, times(1)).deleteRowById(15L);
+                assertEquals(List.of(TableWrite.deleted("ucsbdates", 15L)), applicationEvents.stream(TableWrite.class).toList());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDate with id 15 deleted", json.get("message"));
@@ -229,7 +258,7 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(ucsbDateRepository.findById(eq(15L))).thenReturn(Optional.empty());
+                when(ucsbDateRepository.deleteRowById(eq(15L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -238,7 +267,8 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(ucsbDateRepository, times(1)).findById(15L);
+                verify(ucsbDateRepository, times(1)).deleteRowById(15L);
+                assertEquals(0, applicationEvents.stream(TableWrite.class).count());
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDate with id 15 not found", json.get("message"));
         }
@@ -251,13 +281,9 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                 LocalDateTime ldt1 = LocalDateTime.parse("2022-01-03T00:00:00");
                 LocalDateTime ldt2 = LocalDateTime.parse("2023-01-03T00:00:00");
 
-                UCSBDate ucsbDateOrig = UCSBDate.builder()
-                                .name("firstDayOfClasses")
-                                .quarterYYYYQ("20222")
-                                .localDateTime(ldt1)
-                                .build();
 
                 UCSBDate ucsbDateEdited = UCSBDate.builder()
+                                .id(67)
                                 .name("firstDayOfFestivus")
                                 .quarterYYYYQ("20232")
                                 .localDateTime(ldt2)
@@ -265,7 +291,7 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
 
                 String requestBody = mapper.writeValueAsString(ucsbDateEdited);
 
-                when(ucsbDateRepository.findById(eq(67L))).thenReturn(Optional.of(ucsbDateOrig));
+                when(ucsbDateRepository.updateRowReturningVersion(eq(67L), eq(ucsbDateEdited))).thenReturn(Optional.of(4L));
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -274,13 +300,15 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                                                 .characterEncoding("utf-8")
                                                 .content(requestBody)
                                                 .with(csrf()))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"67-4\"")).andReturn();
 
                 // assert
-                verify(ucsbDateRepository, times(1)).findById(67L);
-                verify(ucsbDateRepository, times(1)).save(ucsbDateEdited); // should be saved with correct user
+                ucsbDateEdited.setVersion(4L); // the version the update returned
+                verify(ucsbDateRepository, times(1)).updateRowReturningVersion(67L, ucsbDateEdited); // should be updated in place
+                assertEquals(List.of(TableWrite.saved("ucsbdates", List.of(ucsbDateEdited))), applicationEvents.stream(TableWrite.class).toList());
                 String responseString = response.getResponse().getContentAsString();
-                assertEquals(requestBody, responseString);
+                assertEquals(mapper.writeValueAsString(ucsbDateEdited), responseString);
         }
 
         @WithMockUser(roles = { "ADMIN", "USER" })
@@ -298,7 +326,7 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
 
                 String requestBody = mapper.writeValueAsString(ucsbEditedDate);
 
-                when(ucsbDateRepository.findById(eq(67L))).thenReturn(Optional.empty());
+                when(ucsbDateRepository.updateRowReturningVersion(eq(67L), eq(ucsbEditedDate))).thenReturn(Optional.empty());
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -310,9 +338,314 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(ucsbDateRepository, times(1)).findById(67L);
+                verify(ucsbDateRepository, times(1)).updateRowReturningVersion(67L, ucsbEditedDate);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDate with id 67 not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_a_page_of_dates_with_a_next_cursor() throws Exception {
+
+                // arrange
+
+                LocalDateTime ldt = LocalDateTime.parse("2022-01-03T00:00:00");
+
+                UCSBDate first = UCSBDate.builder().id(4).name("firstDayOfClasses").quarterYYYYQ("20222").localDateTime(ldt).build();
+                UCSBDate second = UCSBDate.builder().id(7).name("lastDayOfClasses").quarterYYYYQ("20222").localDateTime(ldt).build();
+                UCSBDate third = UCSBDate.builder().id(9).name("finals").quarterYYYYQ("20222").localDateTime(ldt).build();
+
+                when(ucsbDateRepository.findByIdGreaterThanOrderByIdAsc(eq(3L), eq(PageRequest.of(0, 3))))
+                                .thenReturn(new ArrayList<>(Arrays.asList(first, second, third)));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/page?after=3&limit=2"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).findByIdGreaterThanOrderByIdAsc(eq(3L), eq(PageRequest.of(0, 3)));
+                String expectedJson = mapper.writeValueAsString(new KeysetPage<>(Arrays.asList(first, second), 7L));
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_no_next_cursor_on_the_last_page_of_dates() throws Exception {
+
+                // arrange
+
+                LocalDateTime ldt = LocalDateTime.parse("2022-01-03T00:00:00");
+
+                UCSBDate first = UCSBDate.builder().id(4).name("firstDayOfClasses").quarterYYYYQ("20222").localDateTime(ldt).build();
+                UCSBDate second = UCSBDate.builder().id(7).name("lastDayOfClasses").quarterYYYYQ("20222").localDateTime(ldt).build();
+
+                when(ucsbDateRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), eq(PageRequest.of(0, 101))))
+                                .thenReturn(new ArrayList<>(Arrays.asList(first, second)));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/page"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).findByIdGreaterThanOrderByIdAsc(eq(0L), eq(PageRequest.of(0, 101)));
+                String expectedJson = mapper.writeValueAsString(new KeysetPage<UCSBDate, Long>(Arrays.asList(first, second), null));
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @Test
+        public void logged_out_users_cannot_stream_all() throws Exception {
+                mockMvc.perform(get("/api/ucsbdates/all/stream"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_stream_all_dates() throws Exception {
+
+                // arrange
+
+                when(entityStreamingService.ndjson(any())).thenReturn(ResponseEntity.ok().build());
+
+                // act
+                mockMvc.perform(get("/api/ucsbdates/all/stream"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                ArgumentCaptor<Supplier> rows = ArgumentCaptor.forClass(Supplier.class);
+                verify(entityStreamingService, times(1)).ndjson(rows.capture());
+                rows.getValue().get();
+                verify(ucsbDateRepository, times(1)).streamAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_304_for_all_dates_when_the_table_is_unchanged() throws Exception {
+
+                // arrange
+
+                String etag = tableChangeTracker.listTag("ucsbdates");
+
+                // act
+                mockMvc.perform(get("/api/ucsbdates/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+
+                // assert
+
+                verify(ucsbDateRepository, times(0)).findAll();
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_edit_a_date_with_if_match_and_gets_the_new_etag() throws Exception {
+                // arrange
+
+                UCSBDate edited = UCSBDate.builder()
+                                .id(67)
+                                .quarterYYYYQ("20232")
+                                .name("firstDayOfFestivus")
+                                .localDateTime(LocalDateTime.parse("2023-01-03T00:00:00"))
+                                .build();
+
+                String requestBody = mapper.writeValueAsString(edited);
+
+                when(ucsbDateRepository.updateRowByIdAndVersion(eq(67L), eq(3L), eq(edited))).thenReturn(1);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/ucsbdates?id=67")
+                                                .header("If-Match", "\"67-3\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .characterEncoding("utf-8")
+                                                .content(requestBody)
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"67-4\"")).andReturn();
+
+                // assert
+                edited.setVersion(4L); // the request was made with the version from If-Match
+                verify(ucsbDateRepository, times(1)).updateRowByIdAndVersion(67L, 3L, edited);
+                assertEquals(mapper.writeValueAsString(edited), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_gets_412_editing_a_date_that_changed_since_it_was_read() throws Exception {
+                // arrange
+
+                UCSBDate edited = UCSBDate.builder()
+                                .id(67)
+                                .quarterYYYYQ("20232")
+                                .name("firstDayOfFestivus")
+                                .localDateTime(LocalDateTime.parse("2023-01-03T00:00:00"))
+                                .build();
+
+                String requestBody = mapper.writeValueAsString(edited);
+
+                when(ucsbDateRepository.updateRowByIdAndVersion(eq(67L), eq(3L), eq(edited))).thenReturn(0);
+                when(ucsbDateRepository.findVersionById(eq(67L))).thenReturn(Optional.of(4L));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/ucsbdates?id=67")
+                                                .header("If-Match", "\"67-3\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .characterEncoding("utf-8")
+                                                .content(requestBody)
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("UCSBDate with id 67 has been modified since it was read", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_gets_409_editing_a_stale_version_of_a_date() throws Exception {
+                // arrange
+
+                UCSBDate edited = UCSBDate.builder()
+                                .id(67)
+                                .version(5L)
+                                .quarterYYYYQ("20232")
+                                .name("firstDayOfFestivus")
+                                .localDateTime(LocalDateTime.parse("2023-01-03T00:00:00"))
+                                .build();
+
+                String requestBody = mapper.writeValueAsString(edited);
+
+                when(ucsbDateRepository.updateRowByIdAndVersion(eq(67L), eq(5L), eq(edited))).thenReturn(0);
+                when(ucsbDateRepository.findVersionById(eq(67L))).thenReturn(Optional.of(6L));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/ucsbdates?id=67")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .characterEncoding("utf-8")
+                                                .content(requestBody)
+                                                .with(csrf()))
+                                .andExpect(status().isConflict()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("ObjectOptimisticLockingFailureException", json.get("type"));
+        }
+
+        @Test
+        public void logged_out_users_cannot_get_dates_in_a_quarter() throws Exception {
+                mockMvc.perform(get("/api/ucsbdates/quarter?q=20222"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_the_dates_in_a_quarter() throws Exception {
+
+                // arrange
+
+                UCSBDate ucsbDate1 = UCSBDate.builder()
+                                .name("firstDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+
+                List<UCSBDate> expectedDates = List.of(ucsbDate1);
+                when(ucsbDateRepository.findByQuarterYYYYQOrderByLocalDateTimeAsc(eq("20222"), eq(PageRequest.of(0, 100)))).thenReturn(expectedDates);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/quarter?q=20222"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).findByQuarterYYYYQOrderByLocalDateTimeAsc("20222", PageRequest.of(0, 100));
+                assertEquals(mapper.writeValueAsString(expectedDates), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_the_dates_in_a_range() throws Exception {
+
+                // arrange
+
+                LocalDateTime start = LocalDateTime.parse("2022-03-01T00:00:00");
+                LocalDateTime end = LocalDateTime.parse("2022-04-01T00:00:00");
+                UCSBDate ucsbDate2 = UCSBDate.builder()
+                                .name("lastDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-03-11T00:00:00"))
+                                .build();
+
+                List<UCSBDate> expectedDates = List.of(ucsbDate2);
+                when(ucsbDateRepository.findInRange(eq(start), eq(end), eq(PageRequest.of(0, 1000)))).thenReturn(expectedDates);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/range?start=2022-03-01T00:00:00&end=2022-04-01T00:00:00&limit=5000"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).findInRange(start, end, PageRequest.of(0, 1000)); // capped at MAX_PAGE_SIZE
+                verify(ucsbDateRepository, times(0)).findInQuarterAndRange(any(), any(), any(), any());
+                assertEquals(mapper.writeValueAsString(expectedDates), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_the_dates_in_a_range_within_a_quarter() throws Exception {
+
+                // arrange
+
+                LocalDateTime start = LocalDateTime.parse("2022-03-01T00:00:00");
+                LocalDateTime end = LocalDateTime.parse("2022-04-01T00:00:00");
+                when(ucsbDateRepository.findInQuarterAndRange(eq("20222"), eq(start), eq(end), eq(PageRequest.of(0, 10)))).thenReturn(List.of());
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/range?start=2022-03-01T00:00:00&end=2022-04-01T00:00:00&q=20222&limit=10"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).findInQuarterAndRange("20222", start, end, PageRequest.of(0, 10));
+                verify(ucsbDateRepository, times(0)).findInRange(any(), any(), any());
+                assertEquals("[]", response.getResponse().getContentAsString());
+        }
+
+        @Test
+        public void logged_out_users_cannot_list_ucsbdates() throws Exception {
+                mockMvc.perform(get("/api/ucsbdates/list"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_list_ucsbdates_filtered_sorted_and_projected() throws Exception {
+
+                // arrange
+
+                List<Map<String, Object>> expectedRows = List.of(Map.of("name", "firstDayOfClasses", "localDateTime", "2022-01-03T00:00:00"));
+                when(listQueryService.list(eq(UCSBDate.class), any(), eq(Sort.by("localDateTime")), eq(List.of("name", "localDateTime")), eq(UCSBDatesController.LIST_FIELDS), eq(100)))
+                                .thenAnswer(invocation -> expectedRows);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/list?quarterYYYYQ=20222&sort=localDateTime&fields=name,localDateTime"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                ArgumentCaptor<Specification<UCSBDate>> filter = ArgumentCaptor.forClass(Specification.class);
+                verify(listQueryService, times(1)).list(eq(UCSBDate.class), filter.capture(), eq(Sort.by("localDateTime")), eq(List.of("name", "localDateTime")), eq(UCSBDatesController.LIST_FIELDS), eq(100));
+                Root<UCSBDate> root = mock(Root.class);
+                CriteriaBuilder cb = mock(CriteriaBuilder.class);
+                filter.getValue().toPredicate(root, mock(CriteriaQuery.class), cb);
+                verify(root, times(1)).get("quarterYYYYQ");
+                verify(cb, times(1)).equal(root.get("quarterYYYYQ"), "20222");
+                assertEquals(mapper.writeValueAsString(expectedRows), response.getResponse().getContentAsString());
+        }
 }
@@ -5,9 +5,16 @@ import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
 import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.services.DiningCommonsLocator;
+import edu.ucsb.cs156.example.services.EntityStreamingService;
+import edu.ucsb.cs156.example.services.TableChangeTracker;
+import edu.ucsb.cs156.example.services.TableWrite;
+import edu.ucsb.cs156.example.services.SerializedResponseCache;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -15,31 +22,70 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.junit.jupiter.api.BeforeEach;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @WebMvcTest(controllers = UCSBDiningCommonsController.class)
 @Import(TestConfig.class)
+@RecordApplicationEvents
 public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
 
         @MockBean
         UCSBDiningCommonsRepository ucsbDiningCommonsRepository;
 
+        @MockBean
+        EntityStreamingService entityStreamingService;
+
         @MockBean
         UserRepository userRepository;
 
+        @MockBean
+        SerializedResponseCache serializedResponseCache;
+
+        @MockBean
+        DiningCommonsLocator diningCommonsLocator;
+
+        @Autowired
+        TableChangeTracker tableChangeTracker;
+
+        @Autowired
+        ApplicationEvents applicationEvents;
+
+        @BeforeEach
+        public void serialize_on_every_read() {
+                // the cache is mocked, so behave as if every read were a miss
+                when(serializedResponseCache.get(any(), any())).thenAnswer(invocation -> {
+                        Supplier<?> body = invocation.getArgument(1);
+                        return SerializedResponseCache.Entry.of(mapper.writeValueAsBytes(body.get()));
+                });
+        }
+
         // Authorization tests for /api/ucsbdiningcommons/admin/all
 
         @Test
@@ -197,6 +243,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
 
                 // assert
                 verify(ucsbDiningCommonsRepository, times(1)).save(ortega);
+                assertEquals(List.of(TableWrite.saved("ucsbdiningcommons", List.of(ortega))), applicationEvents.stream(TableWrite.class).toList());
                 String expectedJson = mapper.writeValueAsString(ortega);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(expectedJson, responseString);
@@ -207,17 +254,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
         public void admin_can_delete_a_date() throws Exception {
                 // arrange
 
-                UCSBDiningCommons portola = UCSBDiningCommons.builder()
-                                .name("Portola")
-                                .code("portola")
-                                .hasSackMeal(true)
-                                .hasTakeOutMeal(true)
-                                .hasDiningCam(true)
-                                .latitude(34.417723)
-                                .longitude(-119.867427)
-                                .build();
-
-                when(ucsbDiningCommonsRepository.findById(eq("portola"))).thenReturn(Optional.of(portola));
+                when(ucsbDiningCommonsRepository.deleteRowByCode(eq("portola"))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -226,8 +263,8 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(ucsbDiningCommonsRepository, times(1)).findById("portola");
-                verify(ucsbDiningCommonsRepository, times(1)).delete(any());
+                verify(ucsbDiningCommonsRepository, times(1)).deleteRowByCode("portola");
+                assertEquals(List.of(TableWrite.deleted("ucsbdiningcommons", "portola")), applicationEvents.stream(TableWrite.class).toList());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDiningCommons with id portola deleted", json.get("message"));
@@ -239,7 +276,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(ucsbDiningCommonsRepository.findById(eq("munger-hall"))).thenReturn(Optional.empty());
+                when(ucsbDiningCommonsRepository.deleteRowByCode(eq("munger-hall"))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -248,7 +285,8 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(ucsbDiningCommonsRepository, times(1)).findById("munger-hall");
+                verify(ucsbDiningCommonsRepository, times(1)).deleteRowByCode("munger-hall");
+                assertEquals(0, applicationEvents.stream(TableWrite.class).count());
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDiningCommons with id munger-hall not found", json.get("message"));
         }
@@ -258,16 +296,6 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
         public void admin_can_edit_an_existing_commons() throws Exception {
                 // arrange
 
-                UCSBDiningCommons carrilloOrig = UCSBDiningCommons.builder()
-                                .name("Carrillo")
-                                .code("carrillo")
-                                .hasSackMeal(false)
-                                .hasTakeOutMeal(false)
-                                .hasDiningCam(true)
-                                .latitude(34.409953)
-                                .longitude(-119.85277)
-                                .build();
-
                 UCSBDiningCommons carrilloEdited = UCSBDiningCommons.builder()
                                 .name("Carrillo Dining Hall")
                                 .code("carrillo")
@@ -280,7 +308,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
 
                 String requestBody = mapper.writeValueAsString(carrilloEdited);
 
-                when(ucsbDiningCommonsRepository.findById(eq("carrillo"))).thenReturn(Optional.of(carrilloOrig));
+                when(ucsbDiningCommonsRepository.updateRowReturningVersion(eq("carrillo"), eq(carrilloEdited))).thenReturn(Optional.of(4L));
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -289,13 +317,15 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                                 .characterEncoding("utf-8")
                                                 .content(requestBody)
                                                 .with(csrf()))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"carrillo-4\"")).andReturn();
 
                 // assert
-                verify(ucsbDiningCommonsRepository, times(1)).findById("carrillo");
-                verify(ucsbDiningCommonsRepository, times(1)).save(carrilloEdited); // should be saved with updated info
+                carrilloEdited.setVersion(4L); // the version the update returned
+                verify(ucsbDiningCommonsRepository, times(1)).updateRowReturningVersion("carrillo", carrilloEdited); // should be updated in place
+                assertEquals(List.of(TableWrite.saved("ucsbdiningcommons", List.of(carrilloEdited))), applicationEvents.stream(TableWrite.class).toList());
                 String responseString = response.getResponse().getContentAsString();
-                assertEquals(requestBody, responseString);
+                assertEquals(mapper.writeValueAsString(carrilloEdited), responseString);
         }
 
         @WithMockUser(roles = { "ADMIN", "USER" })
@@ -315,7 +345,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
 
                 String requestBody = mapper.writeValueAsString(editedCommons);
 
-                when(ucsbDiningCommonsRepository.findById(eq("munger-hall"))).thenReturn(Optional.empty());
+                when(ucsbDiningCommonsRepository.updateRowReturningVersion(eq("munger-hall"), eq(editedCommons))).thenReturn(Optional.empty());
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -327,9 +357,329 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(ucsbDiningCommonsRepository, times(1)).findById("munger-hall");
+                verify(ucsbDiningCommonsRepository, times(1)).updateRowReturningVersion("munger-hall", editedCommons);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDiningCommons with id munger-hall not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_a_page_of_commons_with_a_next_cursor() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons first = UCSBDiningCommons.builder().code("carrillo").name("Carrillo").hasDiningCam(true).latitude(34.409953).longitude(-119.85277).build();
+                UCSBDiningCommons second = UCSBDiningCommons.builder().code("de-la-guerra").name("De La Guerra").hasDiningCam(true).latitude(34.409811).longitude(-119.845026).build();
+                UCSBDiningCommons third = UCSBDiningCommons.builder().code("ortega").name("Ortega").hasDiningCam(true).latitude(34.410987).longitude(-119.84709).build();
+
+                when(ucsbDiningCommonsRepository.findByCodeGreaterThanOrderByCodeAsc(eq("by"), eq(PageRequest.of(0, 3))))
+                                .thenReturn(new ArrayList<>(Arrays.asList(first, second, third)));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/page?after=by&limit=2"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(1)).findByCodeGreaterThanOrderByCodeAsc(eq("by"), eq(PageRequest.of(0, 3)));
+                String expectedJson = mapper.writeValueAsString(new KeysetPage<>(Arrays.asList(first, second), "de-la-guerra"));
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_no_next_cursor_on_the_last_page_of_commons() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons first = UCSBDiningCommons.builder().code("carrillo").name("Carrillo").hasDiningCam(true).latitude(34.409953).longitude(-119.85277).build();
+                UCSBDiningCommons second = UCSBDiningCommons.builder().code("de-la-guerra").name("De La Guerra").hasDiningCam(true).latitude(34.409811).longitude(-119.845026).build();
+
+                when(ucsbDiningCommonsRepository.findByCodeGreaterThanOrderByCodeAsc(eq(""), eq(PageRequest.of(0, 101))))
+                                .thenReturn(new ArrayList<>(Arrays.asList(first, second)));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/page"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(1)).findByCodeGreaterThanOrderByCodeAsc(eq(""), eq(PageRequest.of(0, 101)));
+                String expectedJson = mapper.writeValueAsString(new KeysetPage<UCSBDiningCommons, String>(Arrays.asList(first, second), null));
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @Test
+        public void logged_out_users_cannot_stream_all() throws Exception {
+                mockMvc.perform(get("/api/ucsbdiningcommons/all/stream"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_stream_all_commons() throws Exception {
+
+                // arrange
+
+                when(entityStreamingService.ndjson(any())).thenReturn(ResponseEntity.ok().build());
+
+                // act
+                mockMvc.perform(get("/api/ucsbdiningcommons/all/stream"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                ArgumentCaptor<Supplier> rows = ArgumentCaptor.forClass(Supplier.class);
+                verify(entityStreamingService, times(1)).ndjson(rows.capture());
+                rows.getValue().get();
+                verify(ucsbDiningCommonsRepository, times(1)).streamAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_304_for_all_commons_when_the_table_is_unchanged() throws Exception {
+
+                // arrange
+
+                String etag = tableChangeTracker.listTag("ucsbdiningcommons");
+
+                // act
+                mockMvc.perform(get("/api/ucsbdiningcommons/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(0)).findAll();
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_edit_a_commons_with_if_match_and_gets_the_new_etag() throws Exception {
+                // arrange
+
+                UCSBDiningCommons edited = UCSBDiningCommons.builder()
+                                .code("carrillo")
+                                .name("Carrillo")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                String requestBody = mapper.writeValueAsString(edited);
+
+                when(ucsbDiningCommonsRepository.updateRowByCodeAndVersion(eq("carrillo"), eq(3L), eq(edited))).thenReturn(1);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/ucsbdiningcommons?code=carrillo")
+                                                .header("If-Match", "\"carrillo-3\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .characterEncoding("utf-8")
+                                                .content(requestBody)
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"carrillo-4\"")).andReturn();
+
+                // assert
+                edited.setVersion(4L); // the request was made with the version from If-Match
+                verify(ucsbDiningCommonsRepository, times(1)).updateRowByCodeAndVersion("carrillo", 3L, edited);
+                assertEquals(mapper.writeValueAsString(edited), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_gets_412_editing_a_commons_that_changed_since_it_was_read() throws Exception {
+                // arrange
+
+                UCSBDiningCommons edited = UCSBDiningCommons.builder()
+                                .code("carrillo")
+                                .name("Carrillo")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                String requestBody = mapper.writeValueAsString(edited);
+
+                when(ucsbDiningCommonsRepository.updateRowByCodeAndVersion(eq("carrillo"), eq(3L), eq(edited))).thenReturn(0);
+                when(ucsbDiningCommonsRepository.findVersionByCode(eq("carrillo"))).thenReturn(Optional.of(4L));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/ucsbdiningcommons?code=carrillo")
+                                                .header("If-Match", "\"carrillo-3\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .characterEncoding("utf-8")
+                                                .content(requestBody)
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("UCSBDiningCommons with id carrillo has been modified since it was read", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_gets_409_editing_a_stale_version_of_a_commons() throws Exception {
+                // arrange
+
+                UCSBDiningCommons edited = UCSBDiningCommons.builder()
+                                .code("carrillo")
+                                .version(5L)
+                                .name("Carrillo")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                String requestBody = mapper.writeValueAsString(edited);
+
+                when(ucsbDiningCommonsRepository.updateRowByCodeAndVersion(eq("carrillo"), eq(5L), eq(edited))).thenReturn(0);
+                when(ucsbDiningCommonsRepository.findVersionByCode(eq("carrillo"))).thenReturn(Optional.of(6L));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/ucsbdiningcommons?code=carrillo")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .characterEncoding("utf-8")
+                                                .content(requestBody)
+                                                .with(csrf()))
+                                .andExpect(status().isConflict()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("ObjectOptimisticLockingFailureException", json.get("type"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_all_commons_from_the_cached_bytes() throws Exception {
+
+                // arrange
+
+                byte[] cached = "[{\"code\":\"carrillo\"}]".getBytes(StandardCharsets.UTF_8);
+                // doReturn, since when(...) would call the mock and run the answer stubbed above
+                doReturn(SerializedResponseCache.Entry.of(cached)).when(serializedResponseCache).get(eq("ucsbdiningcommons/all"), any());
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/all").header("Accept-Encoding", "gzip"))
+                                                .andExpect(status().isOk())
+                                                .andExpect(header().doesNotExist("Content-Encoding"))
+                                                .andExpect(header().string("Vary", "Accept-Encoding"))
+                                                .andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(0)).findAll();
+                assertEquals("[{\"code\":\"carrillo\"}]", response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_all_commons_gzipped_when_the_list_is_large() throws Exception {
+
+                // arrange
+
+                ArrayList<UCSBDiningCommons> expectedCommons = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                                expectedCommons.add(UCSBDiningCommons.builder()
+                                                                .name("Commons " + i)
+                                                                .code("commons-" + i)
+                                                                .hasSackMeal(true)
+                                                                .hasTakeOutMeal(false)
+                                                                .hasDiningCam(true)
+                                                                .latitude(34.41)
+                                                                .longitude(-119.85)
+                                                                .build());
+                }
+                when(ucsbDiningCommonsRepository.findAll()).thenReturn(expectedCommons);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/all").header("Accept-Encoding", "br, gzip"))
+                                                .andExpect(status().isOk())
+                                                .andExpect(header().string("Content-Encoding", "gzip"))
+                                                .andReturn();
+
+                // assert
+
+                byte[] body = new GZIPInputStream(new ByteArrayInputStream(response.getResponse().getContentAsByteArray())).readAllBytes();
+                assertEquals(mapper.writeValueAsString(expectedCommons), new String(body, StandardCharsets.UTF_8));
+        }
+
+        @Test
+        public void logged_out_users_cannot_find_nearby_commons() throws Exception {
+                mockMvc.perform(get("/api/ucsbdiningcommons/near?lat=34.41&lon=-119.85"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_find_the_nearest_commons() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons carrillo = UCSBDiningCommons.builder()
+                                .name("Carrillo")
+                                .code("carrillo")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                when(diningCommonsLocator.nearest(eq(34.41), eq(-119.85), eq(1))).thenReturn(List.of(carrillo));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/near?lat=34.41&lon=-119.85&k=1"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(diningCommonsLocator, times(1)).nearest(34.41, -119.85, 1);
+                assertEquals(mapper.writeValueAsString(List.of(carrillo)), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void nearby_commons_default_to_three_and_are_capped() throws Exception {
+
+                // act
+                mockMvc.perform(get("/api/ucsbdiningcommons/near?lat=0&lon=0"))
+                                .andExpect(status().isOk());
+                mockMvc.perform(get("/api/ucsbdiningcommons/near?lat=0&lon=0&k=1000000"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                verify(diningCommonsLocator, times(1)).nearest(0.0, 0.0, 3);
+                verify(diningCommonsLocator, times(1)).nearest(0.0, 0.0, ApiController.MAX_PAGE_SIZE);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void nearby_commons_reject_a_point_off_the_map() throws Exception {
+
+                // act
+                mockMvc.perform(get("/api/ucsbdiningcommons/near?lat=91&lon=0"))
+                                .andExpect(status().isBadRequest());
+                mockMvc.perform(get("/api/ucsbdiningcommons/near?lat=0&lon=-180.5"))
+                                .andExpect(status().isBadRequest());
+                mockMvc.perform(get("/api/ucsbdiningcommons/near?lat=NaN&lon=0"))
+                                .andExpect(status().isBadRequest());
+
+                // assert
+
+                verify(diningCommonsLocator, times(0)).nearest(anyDouble(), anyDouble(), anyInt());
+        }
 }
@@ -0,0 +1,286 @@
+package edu.ucsb.cs156.example.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.ExampleApplication;
+import edu.ucsb.cs156.example.services.CurrentUserService;
+import edu.ucsb.cs156.example.services.CurrentUserServiceImpl;
+import edu.ucsb.cs156.example.testconfig.MockCurrentUserServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Mixed list/get/create/update/delete load on the five CRUD controllers,
+ * against the whole application (security filters, JPA, caches) on an
+ * in-memory H2 database. Requests go through MockMvc, so the numbers leave
+ * out the network and Tomcat but include everything behind them.
+ *
+ * Tagged "loadtest" and skipped by a normal build; see docs/load-testing.md.
+ * Latency percentiles and throughput per operation are logged and written to
+ * target/loadtest-result.json.
+ */
+
+@Slf4j
+@Tag("loadtest")
+@SpringBootTest(classes = CrudLoadTest.LoadTestApplication.class, properties = {
+    "spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    // application-development.properties logs every statement and bind parameter
+    "logging.level.sql=WARN",
+    "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+    // one line per request; LoggingAspectBenchmark measures what it costs
+    "logging.level.edu.ucsb.cs156.example.aop.LoggingAspect=WARN"
+})
+@AutoConfigureMockMvc
+public class CrudLoadTest {
+  static final int THREADS = Integer.getInteger("loadtest.threads", 8);
+  static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmupSeconds", 10);
+  static final int SECONDS = Integer.getInteger("loadtest.seconds", 30);
+  // optional: fail when the overall p99 is above this
+  static final Integer MAX_P99_MILLIS = Integer.getInteger("loadtest.maxP99Millis");
+
+  /**
+   * The application as ExampleApplication scans it, except that the OAuth
+   * login is stubbed: requests carry a plain user named "admin", which
+   * MockCurrentUserServiceImpl turns into an admin User.
+   */
+  @SpringBootConfiguration
+  @EnableAutoConfiguration
+  @ComponentScan(basePackageClasses = ExampleApplication.class, excludeFilters = {
+      @ComponentScan.Filter(type = FilterType.CUSTOM, classes = TypeExcludeFilter.class),
+      @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = { ExampleApplication.class, CurrentUserServiceImpl.class })
+  })
+  static class LoadTestApplication {
+    @Bean
+    public CurrentUserService currentUser() {
+      return new MockCurrentUserServiceImpl();
+    }
+  }
+
+  static final RequestPostProcessor ADMIN = user("admin").roles("ADMIN", "USER");
+
+  record Table(String name, String path, String key, IntFunction<MockHttpServletRequestBuilder> create, IntFunction<String> updateBody) {
+  }
+
+  static final List<Table> TABLES = List.of(
+      new Table("dogs", "/api/dogs", "id",
+          n -> post("/api/dogs/post").param("name", "Dog " + n).param("breed", "Poodle"),
+          n -> """
+              {"name":"Dog %d","breed":"Golden Retriever"}""".formatted(n)),
+      new Table("books", "/api/books", "id",
+          n -> post("/api/books/post").param("title", "Book " + n).param("author", "Author " + n).param("year", "2023"),
+          n -> """
+              {"title":"Book %d","author":"Author %d","year":"2024"}""".formatted(n, n)),
+      new Table("restaurants", "/api/Restaurant", "id",
+          n -> post("/api/Restaurant/post").param("name", "Restaurant " + n).param("description", "Tacos"),
+          n -> """
+              {"name":"Restaurant %d","description":"Burritos"}""".formatted(n)),
+      new Table("ucsbdates", "/api/ucsbdates", "id",
+          n -> post("/api/ucsbdates/post").param("quarterYYYYQ", "20231").param("name", "Day " + n)
+              .param("localDateTime", "2023-01-09T08:00:00"),
+          n -> """
+              {"quarterYYYYQ":"20232","name":"Day %d","localDateTime":"2023-04-03T08:00:00"}""".formatted(n)),
+      new Table("ucsbdiningcommons", "/api/ucsbdiningcommons", "code",
+          n -> post("/api/ucsbdiningcommons/post").param("code", "commons-" + n).param("name", "Commons " + n)
+              .param("hasSackMeal", "true").param("hasTakeOutMeal", "false").param("hasDiningCam", "true")
+              .param("latitude", "34.41").param("longitude", "-119.85"),
+          n -> """
+              {"name":"Commons %d","hasSackMeal":false,"hasTakeOutMeal":true,"hasDiningCam":true,"latitude":34.41,"longitude":-119.85}"""
+              .formatted(n)));
+
+  @Autowired
+  MockMvc mockMvc;
+
+  @Autowired
+  ObjectMapper mapper;
+
+  private final AtomicInteger sequence = new AtomicInteger();
+
+  /** Latencies of one operation on one table, in nanoseconds. */
+  static class Samples {
+    long[] nanos = new long[1024];
+    int count;
+    int errors;
+
+    void add(long elapsed, boolean ok) {
+      if (count == nanos.length) {
+        nanos = Arrays.copyOf(nanos, count * 2);
+      }
+      nanos[count++] = elapsed;
+      if (!ok) {
+        errors++;
+      }
+    }
+
+    void addAll(Samples other) {
+      for (int i = 0; i < other.count; i++) {
+        add(other.nanos[i], true);
+      }
+      errors += other.errors;
+    }
+
+    double percentileMillis(double p) {
+      long[] sorted = Arrays.copyOf(nanos, count);
+      Arrays.sort(sorted);
+      return sorted[Math.max(0, (int) Math.ceil(p * count) - 1)] / 1e6;
+    }
+  }
+
+  /**
+   * One load-generating thread. Each works only on rows it created itself,
+   * so no request fails because another thread deleted its row.
+   */
+  class Worker {
+    final Random random;
+    final Map<String, Deque<String>> keys = new LinkedHashMap<>();
+    Map<String, Samples> samples = new TreeMap<>();
+
+    Worker(long seed) {
+      random = new Random(seed);
+      TABLES.forEach(table -> keys.put(table.name(), new ArrayDeque<>()));
+    }
+
+    void runFor(int seconds) throws Exception {
+      samples = new TreeMap<>();
+      long end = System.nanoTime() + seconds * 1_000_000_000L;
+      while (System.nanoTime() < end) {
+        step(TABLES.get(random.nextInt(TABLES.size())), random.nextInt(100));
+      }
+    }
+
+    // 40% list, 25% get, 15% update, 10% create, 10% delete
+    void step(Table table, int roll) throws Exception {
+      Deque<String> own = keys.get(table.name());
+      if (roll < 40) {
+        time(table, "list", get(table.path() + "/all"));
+      } else if (own.isEmpty() || (roll >= 80 && roll < 90)) {
+        int n = sequence.incrementAndGet();
+        MvcResult result = time(table, "create", table.create().apply(n));
+        if (result.getResponse().getStatus() == 200) {
+          own.addLast(mapper.readTree(result.getResponse().getContentAsString()).get(table.key()).asText());
+        }
+      } else if (roll < 65) {
+        time(table, "get", get(table.path()).param(table.key(), own.peekLast()));
+      } else if (roll < 80) {
+        time(table, "update", put(table.path()).param(table.key(), own.peekLast())
+            .contentType(MediaType.APPLICATION_JSON).content(table.updateBody().apply(sequence.incrementAndGet())));
+      } else {
+        time(table, "delete", delete(table.path()).param(table.key(), own.pollFirst()));
+      }
+    }
+
+    MvcResult time(Table table, String operation, MockHttpServletRequestBuilder request) throws Exception {
+      long start = System.nanoTime();
+      MvcResult result = mockMvc.perform(request.with(ADMIN).with(csrf())).andReturn();
+      long elapsed = System.nanoTime() - start;
+      samples.computeIfAbsent(operation + " " + table.name(), k -> new Samples())
+          .add(elapsed, result.getResponse().getStatus() < 400);
+      return result;
+    }
+  }
+
+  @Test
+  public void mixed_crud_workload() throws Exception {
+    List<Worker> workers = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      workers.add(new Worker(i));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      run(executor, workers, WARMUP_SECONDS);
+      run(executor, workers, SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Map<String, Samples> byOperation = new TreeMap<>();
+    Samples total = new Samples();
+    for (Worker worker : workers) {
+      worker.samples.forEach((operation, samples) -> {
+        byOperation.computeIfAbsent(operation, k -> new Samples()).addAll(samples);
+        total.addAll(samples);
+      });
+    }
+    byOperation.put("total", total);
+
+    List<Map<String, Object>> results = new ArrayList<>();
+    log.info("load test: {} threads for {}s (after {}s warmup)", THREADS, SECONDS, WARMUP_SECONDS);
+    log.info(String.format("%-28s %8s %7s %10s %9s %9s %9s", "operation", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms"));
+    byOperation.forEach((operation, samples) -> {
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("operation", operation);
+      result.put("requests", samples.count);
+      result.put("errors", samples.errors);
+      result.put("throughputPerSecond", (double) samples.count / SECONDS);
+      result.put("p50Millis", samples.percentileMillis(0.50));
+      result.put("p95Millis", samples.percentileMillis(0.95));
+      result.put("p99Millis", samples.percentileMillis(0.99));
+      results.add(result);
+      log.info(String.format("%-28s %8d %7d %10.1f %9.2f %9.2f %9.2f", operation, samples.count, samples.errors,
+          (double) samples.count / SECONDS, samples.percentileMillis(0.50), samples.percentileMillis(0.95),
+          samples.percentileMillis(0.99)));
+    });
+    mapper.writerWithDefaultPrettyPrinter().writeValue(new File("target/loadtest-result.json"), Map.of(
+        "threads", THREADS, "seconds", SECONDS, "results", results));
+
+    assertEquals(0, total.errors, "requests that failed");
+    if (MAX_P99_MILLIS != null) {
+      assertTrue(total.percentileMillis(0.99) <= MAX_P99_MILLIS,
+          "p99 of %.2f ms is over loadtest.maxP99Millis".formatted(total.percentileMillis(0.99)));
+    }
+  }
+
+  private void run(ExecutorService executor, List<Worker> workers, int seconds) throws Exception {
+    List<Future<?>> running = new ArrayList<>();
+    for (Worker worker : workers) {
+      running.add(executor.submit(() -> {
+        worker.runFor(seconds);
+        return null;
+      }));
+    }
+    for (Future<?> future : running) {
+      future.get();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import edu.ucsb.cs156.example.config.FlywayConfig;
+import edu.ucsb.cs156.example.config.HibernateCacheConfig;
+
+/**
+ * The id sequences must start past the rows that were inserted while ids
+ * still came from IDENTITY columns, e.g. in the file-backed development
+ * database. Rows go in with plain JDBC, outside a test transaction, so that
+ * the migrations (which use connections of their own) can see them.
+ */
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({DatabaseVendor.class, FlywayConfig.class, HibernateCacheConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class IdSequenceMigrationTests {
+  private static final String HISTORY_TABLE = "id_sequence_migration_tests_history";
+  private static final List<String> TABLES = List.of("dog", "book", "restaurant", "ucsbdates", "users");
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @AfterEach
+  public void cleanUp() {
+    TABLES.forEach(table -> jdbcTemplate.update("DELETE FROM " + table));
+    jdbcTemplate.execute("DROP TABLE IF EXISTS \"" + HISTORY_TABLE + "\"");
+  }
+
+  // runs the H2 vendor migrations again, as on a database that predates them
+  private void migrate() {
+    Flyway.configure()
+        .dataSource(dataSource)
+        .locations("classpath:db/vendor/h2")
+        .table(HISTORY_TABLE)
+        .baselineOnMigrate(true)
+        .baselineVersion("0")
+        .load()
+        .migrate();
+  }
+
+  private long nextValue(String sequence) {
+    return jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR " + sequence, Long.class);
+  }
+
+  @Test
+  public void sequences_start_past_the_existing_rows() {
+    jdbcTemplate.update("INSERT INTO dog (id, version, name, breed) VALUES (7, 0, 'Rex', 'Poodle')");
+    jdbcTemplate.update("INSERT INTO dog (id, version, name, breed) VALUES (120, 0, 'Fido', 'Beagle')");
+    jdbcTemplate.update("INSERT INTO book (id, version, title, author) VALUES (33, 0, 'Dune', 'Frank Herbert')");
+    jdbcTemplate.update("INSERT INTO restaurant (id, version, name, description) VALUES (2, 0, 'Freebirds', 'Burritos')");
+
+    migrate();
+
+    assertEquals(121L, nextValue("dog_seq"));
+    assertEquals(34L, nextValue("book_seq"));
+    assertEquals(3L, nextValue("restaurant_seq"));
+  }
+
+  @Test
+  public void ucsbdates_and_users_sequences_start_past_the_existing_rows() {
+    jdbcTemplate.update("INSERT INTO ucsbdates (id, version, name) VALUES (88, 0, 'Noon on Groundhog Day')");
+    jdbcTemplate.update("INSERT INTO users (id, version, email, email_verified, admin) VALUES (12, 0, 'cgaucho@ucsb.edu', TRUE, FALSE)");
+
+    migrate();
+
+    assertEquals(89L, nextValue("ucsbdate_seq"));
+    assertEquals(13L, nextValue("users_seq"));
+    assertEquals(14L, nextValue("users_seq"));
+  }
+
+  @Test
+  public void sequences_of_empty_tables_start_at_1() {
+    migrate();
+
+    assertEquals(1L, nextValue("dog_seq"));
+    assertEquals(1L, nextValue("book_seq"));
+    assertEquals(1L, nextValue("restaurant_seq"));
+    assertEquals(1L, nextValue("ucsbdate_seq"));
+    assertEquals(1L, nextValue("users_seq"));
+  }
+
+  @Test
+  public void sequences_hand_out_blocks_of_50() {
+    migrate();
+
+    assertEquals(1L, nextValue("dog_seq"));
+    assertEquals(51L, nextValue("dog_seq"));
+  }
+}
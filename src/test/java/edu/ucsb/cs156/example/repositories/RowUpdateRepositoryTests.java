@@ -0,0 +1,92 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import edu.ucsb.cs156.example.config.FlywayConfig;
+import edu.ucsb.cs156.example.config.HibernateCacheConfig;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+
+/**
+ * The unconditional update behind a PUT without a version. Each repository
+ * call runs in a transaction of its own, so that the second-level cache is
+ * used as it is behind the controllers.
+ */
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({DatabaseVendor.class, FlywayConfig.class, HibernateCacheConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class RowUpdateRepositoryTests {
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private UCSBDiningCommonsRepository ucsbDiningCommonsRepository;
+
+  @AfterEach
+  public void tearDown() {
+    restaurantRepository.deleteAll();
+    ucsbDiningCommonsRepository.deleteAll();
+  }
+
+  @Test
+  public void the_row_is_replaced_and_its_new_version_returned() {
+    Restaurant saved = restaurantRepository.save(Restaurant.builder().name("Freebirds").description("Burritos").build());
+
+    Optional<Long> version = restaurantRepository.updateRowReturningVersion(saved.getId(),
+        Restaurant.builder().id(12345).name("Freebirds!").build());
+
+    assertEquals(Optional.of(saved.getVersion() + 1), version);
+    Restaurant updated = restaurantRepository.findById(saved.getId()).get();
+    assertEquals("Freebirds!", updated.getName());
+    assertNull(updated.getDescription());
+    assertEquals(saved.getVersion() + 1, updated.getVersion());
+  }
+
+  @Test
+  public void a_missing_row_is_not_created() {
+    Optional<Long> version = restaurantRepository.updateRowReturningVersion(12345L,
+        Restaurant.builder().name("Freebirds").build());
+
+    assertEquals(Optional.empty(), version);
+    assertEquals(0, restaurantRepository.count());
+  }
+
+  @Test
+  public void a_row_in_the_second_level_cache_is_read_again_after_the_update() {
+    UCSBDiningCommons carrillo = UCSBDiningCommons.builder()
+        .code("carrillo")
+        .name("Carrillo")
+        .hasSackMeal(false)
+        .hasTakeOutMeal(true)
+        .hasDiningCam(true)
+        .latitude(34.409953)
+        .longitude(-119.85277)
+        .build();
+    UCSBDiningCommons saved = ucsbDiningCommonsRepository.save(carrillo);
+    ucsbDiningCommonsRepository.findById("carrillo");
+
+    carrillo.setHasSackMeal(true);
+    Optional<Long> version = ucsbDiningCommonsRepository.updateRowReturningVersion("carrillo", carrillo);
+
+    UCSBDiningCommons updated = ucsbDiningCommonsRepository.findById("carrillo").get();
+    assertEquals(Optional.of(saved.getVersion() + 1), version);
+    assertTrue(updated.getHasSackMeal());
+    assertEquals(saved.getVersion() + 1, updated.getVersion());
+  }
+}
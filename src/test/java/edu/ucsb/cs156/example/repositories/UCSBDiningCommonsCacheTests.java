@@ -0,0 +1,135 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import edu.ucsb.cs156.example.config.FlywayConfig;
+import edu.ucsb.cs156.example.config.HibernateCacheConfig;
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Repeated reads of dining commons are served from Hibernate's second-level
+ * and query caches. Each repository call runs in a transaction of its own,
+ * as it does behind the controllers; a read-write cache entry is only
+ * visible to sessions that start after it was put.
+ */
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("test")
+@Import({DatabaseVendor.class, FlywayConfig.class, HibernateCacheConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UCSBDiningCommonsCacheTests {
+
+  @Autowired
+  private UCSBDiningCommonsRepository ucsbDiningCommonsRepository;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private MeterBinder hibernateCacheMetrics;
+
+  private Statistics statistics;
+
+  private static UCSBDiningCommons commons(String code, String name) {
+    return UCSBDiningCommons.builder()
+        .code(code)
+        .name(name)
+        .hasSackMeal(false)
+        .hasTakeOutMeal(true)
+        .hasDiningCam(true)
+        .latitude(34.409953)
+        .longitude(-119.85277)
+        .build();
+  }
+
+  @BeforeEach
+  public void setUp() {
+    ucsbDiningCommonsRepository.saveAll(List.of(commons("carrillo", "Carrillo"), commons("ortega", "Ortega")));
+    entityManagerFactory.getCache().evictAll();
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    ucsbDiningCommonsRepository.deleteAll();
+  }
+
+  @Test
+  public void a_commons_read_again_comes_from_the_second_level_cache() {
+    ucsbDiningCommonsRepository.findById("carrillo");
+    assertEquals(0, statistics.getSecondLevelCacheHitCount());
+    assertEquals(1, statistics.getSecondLevelCacheMissCount());
+
+    long statements = statistics.getPrepareStatementCount();
+    ucsbDiningCommonsRepository.findById("carrillo");
+    assertEquals(1, statistics.getSecondLevelCacheHitCount());
+    assertEquals(1, statistics.getSecondLevelCacheMissCount());
+    assertEquals(statements, statistics.getPrepareStatementCount());
+  }
+
+  @Test
+  public void find_all_read_again_comes_from_the_query_cache() {
+    ucsbDiningCommonsRepository.findAll();
+    assertEquals(0, statistics.getQueryCacheHitCount());
+    assertEquals(1, statistics.getQueryCacheMissCount());
+
+    long statements = statistics.getPrepareStatementCount();
+    ucsbDiningCommonsRepository.findAll();
+    assertEquals(1, statistics.getQueryCacheHitCount());
+    assertEquals(2, statistics.getSecondLevelCacheHitCount());
+    assertEquals(statements, statistics.getPrepareStatementCount());
+  }
+
+  @Test
+  public void region_hits_and_misses_are_published_as_cache_meters() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    hibernateCacheMetrics.bindTo(registry);
+    double hits = gets(registry, "hit");
+    double misses = gets(registry, "miss");
+
+    ucsbDiningCommonsRepository.findById("carrillo");
+    assertEquals(hits, gets(registry, "hit"));
+    assertTrue(gets(registry, "miss") > misses);
+
+    ucsbDiningCommonsRepository.findById("carrillo");
+    assertEquals(hits + 1, gets(registry, "hit"));
+  }
+
+  private static double gets(MeterRegistry registry, String result) {
+    return registry.get("cache.gets").tag("cache", "ucsbdiningcommons").tag("result", result).functionCounter().count();
+  }
+
+  @Test
+  public void a_change_to_a_commons_invalidates_the_cached_find_all() {
+    ucsbDiningCommonsRepository.findAll();
+
+    UCSBDiningCommons carrillo = ucsbDiningCommonsRepository.findById("carrillo").get();
+    carrillo.setHasSackMeal(true);
+    ucsbDiningCommonsRepository.save(carrillo);
+
+    ucsbDiningCommonsRepository.findAll();
+    assertEquals(0, statistics.getQueryCacheHitCount());
+    assertEquals(2, statistics.getQueryCacheMissCount());
+  }
+}
@@ -0,0 +1,92 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import edu.ucsb.cs156.example.config.FlywayConfig;
+import edu.ucsb.cs156.example.config.HibernateCacheConfig;
+import edu.ucsb.cs156.example.entities.User;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({DatabaseVendor.class, FlywayConfig.class, HibernateCacheConfig.class})
+public class UserRepositoryTests {
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private TestEntityManager entityManager;
+
+  // every login runs in a persistence context of its own
+  private User login(String email, boolean admin) {
+    entityManager.clear();
+    return userRepository.upsertByEmail(User.builder()
+        .email(email)
+        .googleSub("sub-" + email)
+        .fullName("Chris Gaucho")
+        .emailVerified(true)
+        .admin(admin)
+        .build());
+  }
+
+  @Test
+  public void first_login_inserts_the_user() {
+    User user = login("cgaucho@ucsb.edu", false);
+
+    assertNotEquals(0L, user.getId());
+    assertEquals("cgaucho@ucsb.edu", user.getEmail());
+    assertEquals("sub-cgaucho@ucsb.edu", user.getGoogleSub());
+    assertEquals("Chris Gaucho", user.getFullName());
+    assertFalse(user.getAdmin());
+    assertEquals(0L, user.getVersion());
+    assertEquals(1L, userRepository.count());
+  }
+
+  @Test
+  public void later_logins_return_the_existing_row() {
+    User first = login("cgaucho@ucsb.edu", false);
+    User second = login("cgaucho@ucsb.edu", false);
+
+    assertEquals(first.getId(), second.getId());
+    assertEquals(0L, second.getVersion());
+    assertEquals(1L, userRepository.count());
+  }
+
+  @Test
+  public void new_users_get_distinct_ids() {
+    User first = login("cgaucho@ucsb.edu", false);
+    User second = login("ldelplaya@ucsb.edu", false);
+
+    assertNotEquals(first.getId(), second.getId());
+    assertEquals(2L, userRepository.count());
+  }
+
+  @Test
+  public void login_as_admin_promotes_an_existing_user() {
+    User user = login("cgaucho@ucsb.edu", false);
+    User promoted = login("cgaucho@ucsb.edu", true);
+
+    assertEquals(user.getId(), promoted.getId());
+    assertTrue(promoted.getAdmin());
+    assertEquals(1L, promoted.getVersion());
+  }
+
+  @Test
+  public void admins_are_never_demoted_by_a_login() {
+    login("cgaucho@ucsb.edu", true);
+    User again = login("cgaucho@ucsb.edu", false);
+
+    assertTrue(again.getAdmin());
+    assertEquals(0L, again.getVersion());
+  }
+}
@@ -0,0 +1,102 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Dog;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+import edu.ucsb.cs156.example.repositories.DogRepository;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = { AutocompleteService.class, EntityStreamingService.class })
+@TestPropertySource(properties = "app.autocomplete.maxValues=100")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class AutocompleteServiceTests {
+
+  @MockBean
+  DogRepository dogRepository;
+
+  @MockBean
+  BookRepository bookRepository;
+
+  @MockBean
+  PlatformTransactionManager transactionManager;
+
+  @MockBean
+  EntityManager entityManager;
+
+  @MockBean
+  ObjectMapper mapper;
+
+  @Autowired
+  AutocompleteService autocompleteService;
+
+  @Autowired
+  ApplicationEventPublisher publisher;
+
+  @Test
+  void breeds_and_authors_are_loaded_at_startup() {
+    Dog max = Dog.builder().id(1).name("Max").breed("Golden Retriever").build();
+    Dog annie = Dog.builder().id(2).name("Annie").breed("Poodle").build();
+    Book middlemarch = Book.builder().id(3).title("Middlemarch").author("George Eliot").build();
+    when(dogRepository.streamAll()).thenReturn(Stream.of(max, annie));
+    when(bookRepository.streamAll()).thenReturn(Stream.of(middlemarch));
+
+    autocompleteService.buildIndexes();
+
+    assertEquals(List.of("Poodle"), autocompleteService.breeds("p", 10));
+    assertEquals(List.of("George Eliot"), autocompleteService.authors("g", 10));
+    verify(entityManager, times(1)).detach(annie);
+    verify(entityManager, times(1)).detach(middlemarch);
+  }
+
+  @Test
+  void writes_keep_the_suggestions_current() {
+    publisher.publishEvent(TableWrite.saved("dog", List.of(Dog.builder().id(1).breed("Poodle").build())));
+    publisher.publishEvent(TableWrite.saved("book", List.of(Book.builder().id(1).author("George Orwell").build())));
+
+    assertEquals(List.of("Poodle"), autocompleteService.breeds("poo", 10));
+    assertEquals(List.of("George Orwell"), autocompleteService.authors("george", 10));
+
+    publisher.publishEvent(TableWrite.saved("dog", List.of(Dog.builder().id(1).breed("Pug").build())));
+    publisher.publishEvent(TableWrite.deleted("book", 1L));
+
+    assertEquals(List.of("Pug"), autocompleteService.breeds("p", 10));
+    assertEquals(List.of(), autocompleteService.authors("george", 10));
+
+    publisher.publishEvent(TableWrite.deleted("dog", 1L));
+    assertEquals(List.of(), autocompleteService.breeds("p", 10));
+  }
+
+  @Test
+  void the_number_of_suggestions_is_clamped() {
+    publisher.publishEvent(TableWrite.saved("dog", IntStream.range(0, 80)
+        .mapToObj(i -> Dog.builder().id(i).breed("Breed %02d".formatted(i)).build())
+        .toList()));
+
+    assertEquals(AutocompleteService.MAX_SUGGESTIONS, autocompleteService.breeds("breed", 1000).size());
+    assertEquals(List.of("Breed 00"), autocompleteService.breeds("breed", 0));
+  }
+}
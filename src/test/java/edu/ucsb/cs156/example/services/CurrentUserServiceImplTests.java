@@ -0,0 +1,132 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.repositories.UserRepository;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = CurrentUserServiceImpl.class)
+@TestPropertySource(properties = {
+    "app.admin.emails=phtcon@ucsb.edu",
+    "app.currentUser.cache.ttlSeconds=300"
+})
+class CurrentUserServiceImplTests {
+
+  @MockBean
+  UserRepository userRepository;
+
+  @MockBean
+  GrantedAuthoritiesService grantedAuthoritiesService;
+
+  @Autowired
+  CurrentUserServiceImpl currentUserService;
+
+  private final AtomicLong nanos = new AtomicLong();
+
+  @BeforeEach
+  void useFakeClock() {
+    currentUserService.ticker = nanos::get;
+    currentUserService.buildUserCache();
+  }
+
+  private Authentication login(String email) {
+    DefaultOAuth2User principal = new DefaultOAuth2User(AuthorityUtils.createAuthorityList("ROLE_USER"),
+        Map.of("sub", "sub-" + email, "email", email, "email_verified", true), "email");
+    return new OAuth2AuthenticationToken(principal, principal.getAuthorities(), "google");
+  }
+
+  private User getUser(String email) {
+    return currentUserService.getOAuth2AuthenticatedUser(SecurityContextHolder.getContext(), login(email));
+  }
+
+  @Test
+  void first_request_upserts_the_user() {
+    User user = User.builder().id(1L).email("cgaucho@ucsb.edu").build();
+    when(userRepository.upsertByEmail(any())).thenReturn(user);
+
+    assertSame(user, getUser("cgaucho@ucsb.edu"));
+
+    ArgumentCaptor<User> upserted = ArgumentCaptor.forClass(User.class);
+    verify(userRepository).upsertByEmail(upserted.capture());
+    User u = upserted.getValue();
+    assertEquals("cgaucho@ucsb.edu", u.getEmail());
+    assertEquals("sub-cgaucho@ucsb.edu", u.getGoogleSub());
+    assertTrue(u.getEmailVerified());
+    assertFalse(u.getAdmin());
+  }
+
+  @Test
+  void emails_in_app_admin_emails_are_upserted_as_admins() {
+    when(userRepository.upsertByEmail(any())).thenReturn(User.builder().id(1L).email("phtcon@ucsb.edu").build());
+
+    getUser("phtcon@ucsb.edu");
+
+    ArgumentCaptor<User> upserted = ArgumentCaptor.forClass(User.class);
+    verify(userRepository).upsertByEmail(upserted.capture());
+    assertTrue(upserted.getValue().getAdmin());
+  }
+
+  @Test
+  void later_requests_are_served_from_the_cache() {
+    User user = User.builder().id(1L).email("cgaucho@ucsb.edu").build();
+    when(userRepository.upsertByEmail(any())).thenReturn(user);
+
+    getUser("cgaucho@ucsb.edu");
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(299));
+    assertSame(user, getUser("cgaucho@ucsb.edu"));
+
+    verify(userRepository, times(1)).upsertByEmail(any());
+  }
+
+  @Test
+  void each_email_has_its_own_entry() {
+    when(userRepository.upsertByEmail(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+    User first = getUser("cgaucho@ucsb.edu");
+    User second = getUser("ldelplaya@ucsb.edu");
+
+    assertEquals("cgaucho@ucsb.edu", first.getEmail());
+    assertEquals("ldelplaya@ucsb.edu", second.getEmail());
+    verify(userRepository, times(2)).upsertByEmail(any());
+  }
+
+  @Test
+  void entries_expire_after_the_ttl() {
+    User before = User.builder().id(1L).email("cgaucho@ucsb.edu").build();
+    User promoted = User.builder().id(1L).email("cgaucho@ucsb.edu").admin(true).build();
+    when(userRepository.upsertByEmail(any())).thenReturn(before, promoted);
+
+    getUser("cgaucho@ucsb.edu");
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(301));
+
+    assertSame(promoted, getUser("cgaucho@ucsb.edu"));
+    verify(userRepository, times(2)).upsertByEmail(any());
+  }
+}
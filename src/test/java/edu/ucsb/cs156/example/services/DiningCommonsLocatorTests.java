@@ -0,0 +1,75 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = DiningCommonsLocator.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class DiningCommonsLocatorTests {
+
+  @MockBean
+  UCSBDiningCommonsRepository ucsbDiningCommonsRepository;
+
+  @Autowired
+  DiningCommonsLocator diningCommonsLocator;
+
+  @Autowired
+  ApplicationEventPublisher publisher;
+
+  UCSBDiningCommons carrillo = UCSBDiningCommons.builder().code("carrillo").latitude(34.409953).longitude(-119.85277).build();
+  UCSBDiningCommons dlg = UCSBDiningCommons.builder().code("de-la-guerra").latitude(34.409811).longitude(-119.845026).build();
+  UCSBDiningCommons portola = UCSBDiningCommons.builder().code("portola").latitude(34.417723).longitude(-119.867427).build();
+  UCSBDiningCommons nowhere = UCSBDiningCommons.builder().code("nowhere").build();
+
+  @Test
+  void toPoint_is_a_unit_vector() {
+    double[] point = DiningCommonsLocator.toPoint(34.41, -119.85);
+
+    assertEquals(1.0, point[0] * point[0] + point[1] * point[1] + point[2] * point[2], 1e-12);
+    assertEquals(1.0, DiningCommonsLocator.toPoint(90, 0)[2], 1e-12);
+  }
+
+  @Test
+  void nearest_commons_come_first_and_commons_without_a_location_are_skipped() {
+    when(ucsbDiningCommonsRepository.findAll()).thenReturn(List.of(portola, nowhere, carrillo, dlg));
+
+    // Storke Tower
+    assertEquals(List.of(dlg, carrillo, portola), diningCommonsLocator.nearest(34.412586, -119.848414, 10));
+    // just east of Portola
+    assertEquals(List.of(portola), diningCommonsLocator.nearest(34.4165, -119.8655, 1));
+  }
+
+  @Test
+  void the_tree_is_built_once_until_the_commons_table_is_written() {
+    when(ucsbDiningCommonsRepository.findAll()).thenReturn(List.of(carrillo));
+
+    assertEquals(List.of(carrillo), diningCommonsLocator.nearest(34.41, -119.85, 3));
+    assertEquals(List.of(carrillo), diningCommonsLocator.nearest(0, 0, 3));
+    publisher.publishEvent(TableWrite.deleted("dog", 1L));
+    assertEquals(List.of(carrillo), diningCommonsLocator.nearest(0, 0, 3));
+    verify(ucsbDiningCommonsRepository, times(1)).findAll();
+
+    when(ucsbDiningCommonsRepository.findAll()).thenReturn(List.of(carrillo, dlg));
+    publisher.publishEvent(TableWrite.saved("ucsbdiningcommons", List.of(dlg)));
+
+    assertEquals(List.of(dlg, carrillo), diningCommonsLocator.nearest(34.41, -119.845, 3));
+    verify(ucsbDiningCommonsRepository, times(2)).findAll();
+  }
+}
@@ -0,0 +1,65 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.entities.Dog;
+
+@ExtendWith(SpringExtension.class)
+@Import(JacksonAutoConfiguration.class)
+@ContextConfiguration(classes = EntityStreamingService.class)
+class EntityStreamingServiceTests {
+
+  @MockBean
+  PlatformTransactionManager transactionManager;
+
+  @MockBean
+  EntityManager entityManager;
+
+  @Autowired
+  ObjectMapper mapper;
+
+  @Autowired
+  EntityStreamingService entityStreamingService;
+
+  @Test
+  void test_ndjson_writes_one_line_per_entity_and_detaches_it() throws Exception {
+    // arrange
+    Dog max = Dog.builder().id(1).name("Max").breed("Golden Retriever").build();
+    Dog annie = Dog.builder().id(2).name("Annie").breed("Poodle").build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    // act
+    ResponseEntity<StreamingResponseBody> response = entityStreamingService.ndjson(() -> Stream.of(max, annie));
+    response.getBody().writeTo(out);
+
+    // assert
+    assertEquals(EntityStreamingService.APPLICATION_NDJSON, response.getHeaders().getContentType());
+    String expected = mapper.writeValueAsString(max) + "\n" + mapper.writeValueAsString(annie) + "\n";
+    assertEquals(expected, out.toString("UTF-8"));
+    verify(entityManager, times(1)).detach(max);
+    verify(entityManager, times(1)).detach(annie);
+    verify(transactionManager, times(1)).commit(null);
+  }
+
+}
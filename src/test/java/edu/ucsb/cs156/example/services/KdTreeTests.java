@@ -0,0 +1,59 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class KdTreeTests {
+
+  static double distanceSquared(double[] a, double[] b) {
+    double sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += (a[i] - b[i]) * (a[i] - b[i]);
+    }
+    return sum;
+  }
+
+  @Test
+  void nearest_matches_a_full_scan_for_random_points() {
+    Random random = new Random(42);
+    List<double[]> points = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      points.add(new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() });
+    }
+    KdTree<double[]> tree = KdTree.build(points, point -> point);
+
+    for (int query = 0; query < 100; query++) {
+      double[] target = { random.nextDouble(), random.nextDouble(), random.nextDouble() };
+      List<double[]> expected = points.stream()
+          .sorted(Comparator.comparingDouble(point -> distanceSquared(point, target)))
+          .limit(7)
+          .toList();
+
+      assertEquals(expected, tree.nearest(target, 7));
+    }
+  }
+
+  @Test
+  void nearest_returns_at_most_the_points_there_are() {
+    KdTree<String> tree = KdTree.build(List.of("a", "b"), name -> new double[] { name.equals("a") ? 0 : 10, 0 });
+
+    assertEquals(2, tree.size());
+    assertEquals(List.of("b", "a"), tree.nearest(new double[] { 9, 1 }, 5));
+    assertEquals(List.of("a"), tree.nearest(new double[] { 1, 1 }, 1));
+    assertEquals(List.of(), tree.nearest(new double[] { 1, 1 }, 0));
+  }
+
+  @Test
+  void an_empty_tree_finds_nothing() {
+    KdTree<String> tree = KdTree.build(List.of(), name -> new double[] { 0, 0 });
+
+    assertEquals(0, tree.size());
+    assertEquals(List.of(), tree.nearest(new double[] { 0, 0 }, 3));
+  }
+}
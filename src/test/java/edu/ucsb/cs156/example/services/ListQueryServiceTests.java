@@ -0,0 +1,151 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.server.ResponseStatusException;
+
+import edu.ucsb.cs156.example.entities.Dog;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = ListQueryService.class)
+class ListQueryServiceTests {
+
+  static final Set<String> FIELDS = Set.of("id", "name", "breed");
+
+  @MockBean
+  EntityManager entityManager;
+
+  @Autowired
+  ListQueryService listQueryService;
+
+  @Test
+  void fieldEquals_is_null_when_no_value_was_given() {
+    assertNull(ListQueryService.<Dog>fieldEquals("name", null));
+  }
+
+  @Test
+  void fieldEquals_compares_the_attribute_to_the_value() {
+    Root<Dog> root = mock(Root.class);
+    Path<Object> name = mock(Path.class);
+    CriteriaBuilder cb = mock(CriteriaBuilder.class);
+    Predicate predicate = mock(Predicate.class);
+    when(root.get("name")).thenReturn(name);
+    when(cb.equal(name, "Fido")).thenReturn(predicate);
+
+    Specification<Dog> spec = ListQueryService.fieldEquals("name", "Fido");
+
+    assertSame(predicate, spec.toPredicate(root, mock(CriteriaQuery.class), cb));
+  }
+
+  @Test
+  void unknown_sort_key_is_rejected_before_querying() {
+    ResponseStatusException e = assertThrows(ResponseStatusException.class,
+        () -> listQueryService.list(Dog.class, null, Sort.by("owner"), null, FIELDS, 100));
+
+    assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+    assertTrue(e.getReason().startsWith("sort: unknown field owner"));
+    verifyNoInteractions(entityManager);
+  }
+
+  @Test
+  void unknown_field_is_rejected() {
+    when(entityManager.getCriteriaBuilder()).thenReturn(mock(CriteriaBuilder.class));
+
+    ResponseStatusException e = assertThrows(ResponseStatusException.class,
+        () -> listQueryService.list(Dog.class, null, Sort.unsorted(), List.of("name", "owner"), FIELDS, 100));
+
+    assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+    assertTrue(e.getReason().startsWith("fields: unknown field owner"));
+  }
+
+  @Test
+  void without_fields_whole_entities_are_returned() {
+    CriteriaBuilder cb = mock(CriteriaBuilder.class);
+    CriteriaQuery<Dog> query = mock(CriteriaQuery.class);
+    Root<Dog> root = mock(Root.class);
+    TypedQuery<Dog> typedQuery = mock(TypedQuery.class);
+    Predicate predicate = mock(Predicate.class);
+    List<Dog> dogs = List.of(Dog.builder().name("Fido").breed("Poodle").build());
+    when(entityManager.getCriteriaBuilder()).thenReturn(cb);
+    when(cb.createQuery(Dog.class)).thenReturn(query);
+    when(query.from(Dog.class)).thenReturn(root);
+    when(entityManager.createQuery(query)).thenReturn(typedQuery);
+    when(typedQuery.setMaxResults(100)).thenReturn(typedQuery);
+    when(typedQuery.getResultList()).thenReturn(dogs);
+
+    List<?> result = listQueryService.list(Dog.class, (r, q, b) -> predicate, Sort.unsorted(), null, FIELDS, 100);
+
+    assertEquals(dogs, result);
+    verify(query).where(predicate);
+    verify(typedQuery).setMaxResults(100);
+  }
+
+  @Test
+  void with_fields_one_map_per_row_is_returned_in_field_order() {
+    CriteriaBuilder cb = mock(CriteriaBuilder.class);
+    CriteriaQuery<Tuple> query = mock(CriteriaQuery.class);
+    Root<Dog> root = mock(Root.class);
+    Path<Object> breed = mock(Path.class);
+    Path<Object> name = mock(Path.class);
+    TypedQuery<Tuple> typedQuery = mock(TypedQuery.class);
+    Tuple tuple = mock(Tuple.class);
+    when(entityManager.getCriteriaBuilder()).thenReturn(cb);
+    when(cb.createTupleQuery()).thenReturn(query);
+    when(query.from(Dog.class)).thenReturn(root);
+    when(root.get("breed")).thenReturn(breed);
+    when(root.get("name")).thenReturn(name);
+    when(breed.alias("breed")).thenReturn(breed);
+    when(name.alias("name")).thenReturn(name);
+    when(entityManager.createQuery(query)).thenReturn(typedQuery);
+    when(typedQuery.setMaxResults(20)).thenReturn(typedQuery);
+    when(typedQuery.getResultList()).thenReturn(List.of(tuple));
+    when(tuple.get("breed")).thenReturn("Poodle");
+    when(tuple.get("name")).thenReturn("Fido");
+
+    List<?> result = listQueryService.list(Dog.class, null, Sort.unsorted(), List.of("breed", "name", "breed"),
+        FIELDS, 20);
+
+    Map<String, Object> expected = new LinkedHashMap<>();
+    expected.put("breed", "Poodle");
+    expected.put("name", "Fido");
+    assertEquals(List.of(expected), result);
+    assertEquals(List.of("breed", "name"), List.copyOf(((Map<?, ?>) result.get(0)).keySet()));
+    verify(query).multiselect(List.<Selection<?>>of(breed, name));
+    verify(query, never()).where(any(Predicate.class));
+    verify(typedQuery).setMaxResults(20);
+  }
+}
@@ -0,0 +1,98 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class PrefixIndexTests {
+
+  @Test
+  void values_are_completed_in_alphabetical_order_ignoring_case() {
+    PrefixIndex index = new PrefixIndex(100, 100);
+    index.put(1, "Poodle");
+    index.put(2, "Pomeranian");
+    index.put(3, "Pug");
+    index.put(4, "Golden Retriever");
+
+    assertEquals(List.of("Pomeranian", "Poodle"), index.complete("PO", 10));
+    assertEquals(List.of("Pomeranian"), index.complete(" po ", 1));
+    assertEquals(List.of("Golden Retriever", "Pomeranian", "Poodle", "Pug"), index.complete("", 10));
+    assertEquals(List.of("Golden Retriever", "Pomeranian"), index.complete(null, 2));
+    assertEquals(List.of(), index.complete("x", 10));
+  }
+
+  @Test
+  void a_value_is_suggested_once_and_kept_while_any_row_has_it() {
+    PrefixIndex index = new PrefixIndex(100, 100);
+    index.put(1, "Poodle");
+    index.put(2, "poodle ");
+    index.put(3, "   ");
+    index.put(4, null);
+
+    assertEquals(List.of("Poodle"), index.complete("p", 10));
+    assertEquals(1, index.size());
+
+    index.remove(1);
+    assertEquals(List.of("Poodle"), index.complete("p", 10));
+
+    // the update moves row 2 off poodle, so nothing has it any more
+    index.put(2, "Pug");
+    assertEquals(List.of("Pug"), index.complete("p", 10));
+
+    index.remove(2);
+    index.remove(99);
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  void new_values_are_dropped_once_the_index_is_full() {
+    PrefixIndex index = new PrefixIndex(2, 100);
+    index.put(1, "Beagle");
+    index.put(2, "Boxer");
+    index.put(3, "Bulldog");
+    index.put(4, "Boxer");
+
+    assertEquals(List.of("Beagle", "Boxer"), index.complete("b", 10));
+
+    index.remove(3);
+    index.remove(2);
+    assertEquals(List.of("Beagle", "Boxer"), index.complete("b", 10));
+
+    // moving the last boxer to bulldog frees a slot for it
+    index.put(4, "Bulldog");
+    assertEquals(List.of("Beagle", "Bulldog"), index.complete("b", 10));
+
+    index.clear();
+    assertEquals(List.of(), index.complete("b", 10));
+  }
+
+  @Test
+  void values_of_rows_past_the_row_cap_are_kept_until_a_rebuild() {
+    PrefixIndex index = new PrefixIndex(100, 2);
+    index.put(1, "Beagle");
+    index.put(2, "Boxer");
+    index.put(3, "Bulldog");
+    index.put(4, "Boxer");
+
+    assertEquals(List.of("Beagle", "Boxer", "Bulldog"), index.complete("b", 10));
+
+    // rows 1 and 2 are tracked, so deleting them releases their values,
+    // except that row 4 pinned boxer
+    index.remove(1);
+    index.remove(2);
+    assertEquals(List.of("Boxer", "Bulldog"), index.complete("b", 10));
+
+    // the freed slots are used by the next rows written
+    index.put(5, "Basset");
+    index.remove(5);
+    index.remove(3);
+    assertEquals(List.of("Boxer", "Bulldog"), index.complete("b", 10));
+
+    index.clear();
+    index.put(3, "Bulldog");
+    index.remove(3);
+    assertEquals(List.of(), index.complete("b", 10));
+  }
+}
@@ -0,0 +1,101 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.entities.Dog;
+
+@ExtendWith(SpringExtension.class)
+@Import(JacksonAutoConfiguration.class)
+@ContextConfiguration(classes = SerializedResponseCache.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class SerializedResponseCacheTests {
+
+  @Autowired
+  ObjectMapper mapper;
+
+  @Autowired
+  SerializedResponseCache serializedResponseCache;
+
+  @Autowired
+  ApplicationEventPublisher publisher;
+
+  @Test
+  void test_get_serializes_once_until_the_table_is_written() throws Exception {
+    // arrange
+    AtomicInteger loads = new AtomicInteger();
+    List<Dog> dogs = List.of(Dog.builder().id(1).name("Max").breed("Golden Retriever").build());
+    SerializedResponseCache.Entry books = serializedResponseCache.get("book/all", List::of);
+
+    // act
+    SerializedResponseCache.Entry first = serializedResponseCache.get("dog/all", () -> { loads.incrementAndGet(); return dogs; });
+    SerializedResponseCache.Entry second = serializedResponseCache.get("dog/all", () -> { loads.incrementAndGet(); return dogs; });
+    publisher.publishEvent(TableWrite.deleted("dog", 2L));
+    SerializedResponseCache.Entry third = serializedResponseCache.get("dog/all", () -> { loads.incrementAndGet(); return dogs; });
+
+    // assert
+    assertSame(first, second);
+    assertEquals(2, loads.get());
+    assertArrayEquals(mapper.writeValueAsBytes(dogs), third.getJson());
+    assertSame(books, serializedResponseCache.get("book/all", List::of));
+  }
+
+  @Test
+  void test_small_bodies_are_not_gzipped() {
+    SerializedResponseCache.Entry entry = SerializedResponseCache.Entry.of("[]".getBytes());
+    assertNull(entry.getGzip());
+  }
+
+  @Test
+  void test_large_bodies_are_gzipped() throws Exception {
+    // arrange
+    byte[] json = ("[" + "0,".repeat(SerializedResponseCache.GZIP_MIN_SIZE) + "0]").getBytes();
+
+    // act
+    SerializedResponseCache.Entry entry = SerializedResponseCache.Entry.of(json);
+
+    // assert
+    assertNotNull(entry.getGzip());
+    assertTrue(entry.getGzip().length < json.length);
+    assertArrayEquals(json, new GZIPInputStream(new ByteArrayInputStream(entry.getGzip())).readAllBytes());
+  }
+
+  @Test
+  void test_get_wraps_serialization_failures() {
+    // Jackson can't serialize a bare Object
+    assertThrows(IllegalStateException.class, () -> serializedResponseCache.get("broken", Object::new));
+  }
+
+  @Test
+  void test_accepts_gzip() {
+    assertTrue(SerializedResponseCache.acceptsGzip("gzip"));
+    assertTrue(SerializedResponseCache.acceptsGzip("br, GZIP;q=0.5"));
+    assertFalse(SerializedResponseCache.acceptsGzip(null));
+    assertFalse(SerializedResponseCache.acceptsGzip("br, deflate"));
+    assertFalse(SerializedResponseCache.acceptsGzip("gzip;q=0"));
+    assertFalse(SerializedResponseCache.acceptsGzip("gzip; q=0.00"));
+  }
+}
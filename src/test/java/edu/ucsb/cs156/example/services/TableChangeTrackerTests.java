@@ -0,0 +1,33 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TableChangeTrackerTests {
+
+  @Test
+  void tag_is_weak_and_stable_while_the_table_is_unchanged() {
+    TableChangeTracker tracker = new TableChangeTracker();
+    String tag = tracker.listTag("dog");
+
+    assertTrue(tag.startsWith("W/\"dog-"));
+    assertTrue(tag.endsWith("-0\""));
+    assertEquals(tag, tracker.listTag("dog"));
+  }
+
+  @Test
+  void a_write_changes_the_tag_of_that_table_only() {
+    TableChangeTracker tracker = new TableChangeTracker();
+    String dogs = tracker.listTag("dog");
+    String books = tracker.listTag("book");
+
+    tracker.tableWritten(TableWrite.deleted("dog", 1L));
+
+    assertNotEquals(dogs, tracker.listTag("dog"));
+    assertTrue(tracker.listTag("dog").endsWith("-1\""));
+    assertEquals(books, tracker.listTag("book"));
+  }
+}
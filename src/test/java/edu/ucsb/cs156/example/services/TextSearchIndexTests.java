@@ -0,0 +1,77 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TextSearchIndexTests {
+
+  @Test
+  void words_are_lower_cased_runs_of_letters_and_digits() {
+    assertEquals(List.of("nineteen", "eighty", "four", "1984", "café"),
+        TextSearchIndex.words("Nineteen Eighty-Four (1984), Café!"));
+    assertEquals(List.of(), TextSearchIndex.words(null));
+    assertEquals(List.of(), TextSearchIndex.words("  --  "));
+  }
+
+  @Test
+  void rows_must_contain_every_word_of_the_query() {
+    TextSearchIndex index = new TextSearchIndex();
+    index.put(1, "Animal Farm George Orwell");
+    index.put(2, "1984 George Orwell");
+    index.put(3, "Middlemarch George Eliot");
+
+    assertEquals(List.of(1L, 2L), index.search("orwell GEORGE", 0, 10));
+    assertEquals(List.of(3L), index.search("eliot", 0, 10));
+    assertEquals(List.of(), index.search("george tolkien", 0, 10));
+    assertEquals(List.of(), index.search("   ", 0, 10));
+  }
+
+  @Test
+  void rows_with_more_occurrences_rank_higher() {
+    TextSearchIndex index = new TextSearchIndex();
+    index.put(1, "pizza");
+    index.put(2, "pizza pizza pizza");
+    index.put(3, "pasta");
+    index.put(4, "pizza pasta");
+
+    assertEquals(List.of(2L, 1L, 4L), index.search("pizza", 0, 10));
+    assertEquals(List.of(4L), index.search("pizza pasta", 0, 10));
+  }
+
+  @Test
+  void ties_are_broken_by_id_and_results_are_paged() {
+    TextSearchIndex index = new TextSearchIndex();
+    for (long id = 10; id >= 1; id--) {
+      index.put(id, "taco");
+    }
+
+    assertEquals(List.of(1L, 2L, 3L), index.search("taco", 0, 3));
+    assertEquals(List.of(4L, 5L, 6L), index.search("taco", 3, 3));
+    assertEquals(List.of(10L), index.search("taco", 9, 3));
+    assertEquals(List.of(), index.search("taco", 12, 3));
+  }
+
+  @Test
+  void put_replaces_the_previous_text_and_remove_forgets_the_row() {
+    TextSearchIndex index = new TextSearchIndex();
+    index.put(1, "Chipotle burritos");
+    index.put(1, "Chipotle bowls");
+    index.put(2, "Freebirds burritos");
+
+    assertEquals(List.of(2L), index.search("burritos", 0, 10));
+    assertEquals(List.of(1L), index.search("bowls", 0, 10));
+
+    index.remove(1);
+    index.remove(99);
+
+    assertEquals(List.of(), index.search("chipotle", 0, 10));
+    assertEquals(1, index.size());
+
+    index.clear();
+    assertEquals(0, index.size());
+    assertEquals(List.of(), index.search("burritos", 0, 10));
+  }
+}
@@ -0,0 +1,122 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+import edu.ucsb.cs156.example.repositories.DatabaseVendor;
+import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = { TextSearchService.class, EntityStreamingService.class })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class TextSearchServiceTests {
+
+  @MockBean
+  DatabaseVendor databaseVendor;
+
+  @MockBean
+  BookRepository bookRepository;
+
+  @MockBean
+  RestaurantRepository restaurantRepository;
+
+  @MockBean
+  PlatformTransactionManager transactionManager;
+
+  @MockBean
+  EntityManager entityManager;
+
+  @MockBean
+  ObjectMapper mapper;
+
+  @Autowired
+  TextSearchService textSearchService;
+
+  @Autowired
+  ApplicationEventPublisher publisher;
+
+  Book animalFarm = Book.builder().id(1).title("Animal Farm").author("George Orwell").year("1945").build();
+  Book nineteenEightyFour = Book.builder().id(2).title("1984").author("George Orwell").year("1949").build();
+  Book middlemarch = Book.builder().id(3).title("Middlemarch").author("George Eliot").year("1871").build();
+
+  @Test
+  void on_postgres_the_search_runs_in_the_database_and_writes_are_ignored() {
+    when(databaseVendor.isPostgres()).thenReturn(true);
+    when(bookRepository.searchText("orwell", PageRequest.of(1, 5))).thenReturn(List.of(animalFarm));
+    when(restaurantRepository.searchText("tacos", PageRequest.of(0, 5))).thenReturn(List.of());
+
+    textSearchService.buildIndexes();
+    publisher.publishEvent(TableWrite.saved("book", List.of(middlemarch)));
+
+    assertEquals(List.of(animalFarm), textSearchService.searchBooks("orwell", PageRequest.of(1, 5)));
+    assertEquals(List.of(), textSearchService.searchRestaurants("tacos", PageRequest.of(0, 5)));
+    verify(bookRepository, times(0)).streamAll();
+    verify(bookRepository, times(0)).findAllById(any());
+  }
+
+  @Test
+  void on_h2_books_are_indexed_at_startup_and_returned_in_rank_order() {
+    when(databaseVendor.isPostgres()).thenReturn(false);
+    when(bookRepository.streamAll()).thenReturn(Stream.of(animalFarm, nineteenEightyFour, middlemarch));
+    when(restaurantRepository.streamAll()).thenReturn(Stream.of());
+    // the repository hands rows back in whatever order it likes
+    when(bookRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(nineteenEightyFour, animalFarm));
+    when(bookRepository.findAllById(List.of(2L))).thenReturn(List.of(nineteenEightyFour));
+
+    textSearchService.buildIndexes();
+
+    assertEquals(List.of(animalFarm, nineteenEightyFour), textSearchService.searchBooks("orwell", PageRequest.of(0, 10)));
+    assertEquals(List.of(nineteenEightyFour), textSearchService.searchBooks("george orwell", PageRequest.of(1, 1)));
+    verify(entityManager, times(1)).detach(middlemarch);
+  }
+
+  @Test
+  void on_h2_writes_keep_the_index_current() {
+    Restaurant freebirds = Restaurant.builder().id(5).name("Freebirds").description("Burritos").build();
+    Restaurant renamed = Restaurant.builder().id(5).name("Freebirds").description("Tacos").build();
+    when(databaseVendor.isPostgres()).thenReturn(false);
+    when(restaurantRepository.findAllById(List.of(5L))).thenReturn(List.of(renamed));
+    when(restaurantRepository.findAllById(List.of())).thenReturn(List.of());
+
+    publisher.publishEvent(TableWrite.saved("restaurant", List.of(freebirds)));
+    publisher.publishEvent(TableWrite.saved("restaurant", List.of(renamed)));
+
+    assertEquals(List.of(), textSearchService.searchRestaurants("burritos", PageRequest.of(0, 10)));
+    assertEquals(List.of(renamed), textSearchService.searchRestaurants("tacos", PageRequest.of(0, 10)));
+
+    publisher.publishEvent(TableWrite.deleted("restaurant", 5L));
+
+    assertEquals(List.of(), textSearchService.searchRestaurants("freebirds", PageRequest.of(0, 10)));
+  }
+
+  @Test
+  void text_skips_missing_columns() {
+    assertEquals("Middlemarch", TextSearchService.text(Book.builder().title("Middlemarch").build()));
+    assertEquals("Freebirds Burritos",
+        TextSearchService.text(Restaurant.builder().name("Freebirds").description("Burritos").build()));
+  }
+}